@@ -0,0 +1,277 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.lordcrekit.JEasy.io.files;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs one file operation per item, on the calling thread plus up to
+ * parallelism - 1 helpers. Helpers run on the executor of the operation's
+ * {@link OperationControl}, or on a private {@link ForkJoinPool} if it has
+ * none. Operations nested in each other under the same control share the
+ * parallelism: a helper is only started while the operation has fewer than
+ * parallelism - 1 helpers running. Failures do not stop the other items; they
+ * are collected and thrown together once every item has been attempted.
+ * <p>
+ * Items are claimed one at a time from a shared counter, so a cancel takes
+ * effect before the next item is started. The calling thread only waits for
+ * items that were claimed by helpers already running, never for helpers that
+ * have not been scheduled yet, so it cannot deadlock on a saturated executor.
+ *
+ * @author William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu)
+ */
+final class BulkOperation {
+
+  /**
+   * The operation applied to each item.
+   *
+   * @param <T>
+   *     The type of item.
+   */
+  interface Action<T> {
+
+    void apply(T item) throws IOException;
+  }
+
+  /**
+   * An operation on a file that reports how many bytes it processed.
+   *
+   * @param <T>
+   *     The type of item.
+   */
+  interface MeasuredAction<T> {
+
+    long apply(T item) throws IOException;
+  }
+
+  private BulkOperation() {
+  }
+
+  /**
+   * Applies the action to every item, using at most parallelism threads.
+   *
+   * @param <T>
+   *     The type of item.
+   * @param items
+   *     The items to process.
+   * @param parallelism
+   *     The maximum number of items processed at the same time.
+   * @param action
+   *     The operation to apply to each item.
+   * @param failureMessage
+   *     Message of the aggregated exception, e.g. "Failed to copy".
+   * @throws IOException
+   *     If the action failed for any item. Every individual failure is
+   *     attached as a suppressed exception.
+   */
+  static <T> void run(List<T> items, int parallelism, Action<? super T> action, String failureMessage)
+      throws IOException {
+
+    execute(items, parallelism, (T item) -> {
+      action.apply(item);
+      return 0;
+    }, failureMessage, null, OperationControl.blocking());
+  }
+
+  /**
+   * Applies the action to every item, using at most parallelism threads, as
+   * part of a larger operation.
+   *
+   * @param <T>
+   *     The type of item.
+   * @param items
+   *     The items to process.
+   * @param parallelism
+   *     The maximum number of items processed at the same time.
+   * @param action
+   *     The operation to apply to each item.
+   * @param failureMessage
+   *     Message of the aggregated exception, e.g. "Failed to copy".
+   * @param control
+   *     Where helpers run and whether the operation was cancelled.
+   * @throws IOException
+   *     If the action failed for any item. Every individual failure is
+   *     attached as a suppressed exception.
+   * @throws java.util.concurrent.CancellationException
+   *     If the operation was cancelled.
+   */
+  static <T> void run(List<T> items, int parallelism, Action<? super T> action, String failureMessage,
+      OperationControl control) throws IOException {
+
+    execute(items, parallelism, (T item) -> {
+      action.apply(item);
+      return 0;
+    }, failureMessage, null, control);
+  }
+
+  /**
+   * Applies the action to every file, using at most parallelism threads, and
+   * records every file in the metrics.
+   *
+   * @param files
+   *     The files to process.
+   * @param parallelism
+   *     The maximum number of files processed at the same time.
+   * @param action
+   *     The operation to apply to each file.
+   * @param failureMessage
+   *     Message of the aggregated exception, e.g. "Failed to copy".
+   * @param metrics
+   *     Where to record progress, or null.
+   * @param control
+   *     Where helpers run and whether the operation was cancelled.
+   * @throws IOException
+   *     If the action failed for any file. Every individual failure is
+   *     attached as a suppressed exception.
+   * @throws java.util.concurrent.CancellationException
+   *     If the operation was cancelled.
+   */
+  static void run(List<Path> files, int parallelism, MeasuredAction<Path> action, String failureMessage,
+      FileOperationMetrics metrics, OperationControl control) throws IOException {
+
+    execute(files, parallelism, action, failureMessage, metrics, control);
+  }
+
+  private static <T> void execute(List<T> items, int parallelism, MeasuredAction<? super T> action,
+      String failureMessage, FileOperationMetrics metrics, OperationControl control) throws IOException {
+
+    if (metrics != null)
+      metrics.start();
+    final Queue<IOException> failures = new ConcurrentLinkedQueue<>();
+    final AtomicReference<RuntimeException> unexpected = new AtomicReference<>();
+    final AtomicInteger next = new AtomicInteger();
+    final AtomicInteger done = new AtomicInteger();
+    final int size = items.size();
+
+    final Runnable worker = () -> {
+      int i;
+      while ((i = next.getAndIncrement()) < size)
+        try {
+          if (!control.isCancelled())
+            apply(action, items.get(i), failures, metrics);
+        } catch (RuntimeException ex) {
+          unexpected.compareAndSet(null, ex);
+          control.cancel();
+        } finally {
+          if (done.incrementAndGet() == size || control.isCancelled())
+            synchronized (done) {
+              done.notifyAll();
+            }
+        }
+    };
+
+    final int helpers = control.reserveHelpers(Math.min(parallelism, size) - 1, parallelism);
+    final Runnable helper = () -> {
+      try {
+        worker.run();
+      } finally {
+        control.releaseHelper();
+      }
+    };
+    Executor executor = control.getExecutor();
+    ExecutorService pool = null;
+    boolean interrupted = false;
+    int started = 0;
+    try {
+      if (helpers > 0 && executor == null)
+        executor = pool = new ForkJoinPool(helpers);
+      for (; started < helpers; started++)
+        executor.execute(helper);
+      worker.run();
+
+      synchronized (done) {
+        while (done.get() < Math.min(next.get(), size))
+          try {
+            done.wait();
+          } catch (InterruptedException ex) {
+            interrupted = true;
+            control.cancel();
+          }
+      }
+    } finally {
+      for (int i = started; i < helpers; i++)
+        control.releaseHelper();
+      if (pool != null)
+        pool.shutdown();
+    }
+
+    if (unexpected.get() != null)
+      throw unexpected.get();
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(failureMessage + ": interrupted.");
+    }
+    control.throwIfCancelled();
+    throwIfFailed(failureMessage, failures);
+  }
+
+  /**
+   * Throws a single exception holding every failure, if there were any.
+   *
+   * @param failureMessage
+   *     Message of the aggregated exception.
+   * @param failures
+   *     The failures to aggregate.
+   * @throws IOException
+   *     If failures is not empty.
+   */
+  static void throwIfFailed(String failureMessage, Collection<IOException> failures) throws IOException {
+    if (failures.isEmpty())
+      return;
+    final IOException ex = new IOException(failureMessage + " " + failures.size() + " file(s).");
+    for (IOException i : failures)
+      ex.addSuppressed(i);
+    throw ex;
+  }
+
+  private static <T> void apply(MeasuredAction<? super T> action, T item, Queue<IOException> failures,
+      FileOperationMetrics metrics) {
+
+    final long start = metrics == null ? 0 : System.nanoTime();
+    try {
+      final long bytes = action.apply(item);
+      if (metrics != null)
+        metrics.record((Path) item, bytes, Math.max(0, System.nanoTime() - start));
+      return;
+    } catch (IOException ex) {
+      failures.add(ex);
+    } catch (UncheckedIOException ex) {
+      failures.add(ex.getCause());
+    }
+    if (metrics != null)
+      metrics.recordFailure();
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.lordcrekit.JEasy.io.files;
+
+/**
+ * Settings for the bulk copy operations in {@link JEasyFiles}. Every setter
+ * returns the options object so they can be chained.
+ *
+ * @author William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu)
+ */
+public final class CopyOptions {
+
+  private int parallelism;
+  private CopyStrategy strategy;
+  private FileOperationMetrics metrics;
+  private long largeFileThreshold;
+  private long chunkSize;
+
+  /**
+   * Constructs a new CopyOptions with one copying thread per available
+   * processor, copying with {@link CopyStrategies#STREAM}. Files of 256 MB or
+   * more are copied in 64 MB ranges.
+   */
+  public CopyOptions() {
+    this.parallelism = Runtime.getRuntime().availableProcessors();
+    this.strategy = CopyStrategies.STREAM;
+    this.largeFileThreshold = 256L * 1024 * 1024;
+    this.chunkSize = 64L * 1024 * 1024;
+  }
+
+  /**
+   * Gets the maximum number of files that will be copied at the same time.
+   *
+   * @return The number of copying threads.
+   */
+  public int getParallelism() {
+    return this.parallelism;
+  }
+
+  /**
+   * Sets the maximum number of files that will be copied at the same time. A
+   * parallelism of 1 copies every file on the calling thread.
+   *
+   * @param parallelism
+   *     The number of copying threads.
+   * @return Pointer back to this object.
+   * @throws IllegalArgumentException
+   *     If parallelism is less than 1.
+   */
+  public CopyOptions setParallelism(int parallelism) {
+    if (parallelism < 1)
+      throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+    this.parallelism = parallelism;
+    return this;
+  }
+
+  /**
+   * Gets the strategy used to copy each file.
+   *
+   * @return The copy strategy.
+   */
+  public CopyStrategy getStrategy() {
+    return this.strategy;
+  }
+
+  /**
+   * Sets the strategy used to copy each file. Files the strategy declines are
+   * copied with {@link CopyStrategies#STREAM} instead, so a strategy that
+   * only works for some files can safely be used on any tree.
+   *
+   * @param strategy
+   *     The copy strategy.
+   * @return Pointer back to this object.
+   * @see CopyStrategies
+   */
+  public CopyOptions setStrategy(CopyStrategy strategy) {
+    if (strategy == null)
+      throw new NullPointerException("strategy");
+    this.strategy = strategy;
+    return this;
+  }
+
+  /**
+   * Gets where progress of the copy is recorded.
+   *
+   * @return The metrics, or null if progress is not recorded.
+   */
+  public FileOperationMetrics getMetrics() {
+    return this.metrics;
+  }
+
+  /**
+   * Sets where progress of the copy is recorded. Every copied file is recorded
+   * with its size and how long it took to copy.
+   *
+   * @param metrics
+   *     The metrics, or null to not record progress.
+   * @return Pointer back to this object.
+   */
+  public CopyOptions setMetrics(FileOperationMetrics metrics) {
+    this.metrics = metrics;
+    return this;
+  }
+
+  /**
+   * Gets the size from which a single file is copied by several threads.
+   *
+   * @return The large file threshold in bytes.
+   */
+  public long getLargeFileThreshold() {
+    return this.largeFileThreshold;
+  }
+
+  /**
+   * Sets the size from which a single file is copied by several threads. Such
+   * a file is split into ranges of the chunk size, which are copied at the
+   * same time with positional reads and writes, using up to the parallelism
+   * threads. Strategies that link or clone files are still tried first, and
+   * only a file they decline is copied in ranges.
+   *
+   * @param largeFileThreshold
+   *     The large file threshold in bytes, or {@link Long#MAX_VALUE} to always
+   *     copy each file on one thread.
+   * @return Pointer back to this object.
+   * @throws IllegalArgumentException
+   *     If largeFileThreshold is less than 1.
+   */
+  public CopyOptions setLargeFileThreshold(long largeFileThreshold) {
+    if (largeFileThreshold < 1)
+      throw new IllegalArgumentException("Large file threshold must be at least 1: " + largeFileThreshold);
+    this.largeFileThreshold = largeFileThreshold;
+    return this;
+  }
+
+  /**
+   * Gets the size of the ranges large files are split into.
+   *
+   * @return The chunk size in bytes.
+   */
+  public long getChunkSize() {
+    return this.chunkSize;
+  }
+
+  /**
+   * Sets the size of the ranges large files are split into. Each range is
+   * copied by one thread.
+   *
+   * @param chunkSize
+   *     The chunk size in bytes.
+   * @return Pointer back to this object.
+   * @throws IllegalArgumentException
+   *     If chunkSize is less than 1.
+   * @see #setLargeFileThreshold(long)
+   */
+  public CopyOptions setChunkSize(long chunkSize) {
+    if (chunkSize < 1)
+      throw new IllegalArgumentException("Chunk size must be at least 1: " + chunkSize);
+    this.chunkSize = chunkSize;
+    return this;
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.lordcrekit.JEasy.io.files;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The built in {@link CopyStrategy} implementations.
+ *
+ * @author William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu)
+ */
+public final class CopyStrategies {
+
+  /**
+   * Copies with {@link Files#copy(Path, Path, java.nio.file.CopyOption...)}.
+   * Supports every file, so it is the final fallback of every other strategy.
+   */
+  public static final CopyStrategy STREAM = (Path source, Path target) -> {
+    Files.copy(source, target);
+    return true;
+  };
+
+  /**
+   * Copies with {@link FileChannel#transferTo(long, long,
+   * java.nio.channels.WritableByteChannel)}, which lets the operating system
+   * move the bytes without passing them through the java heap.
+   */
+  public static final CopyStrategy TRANSFER_TO = (Path source, Path target) -> {
+    try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+         FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+      final long size = in.size();
+      long position = 0;
+      while (position < size)
+        position += in.transferTo(position, size - position, out);
+    }
+    return true;
+  };
+
+  /**
+   * Creates a hardlink to the source instead of copying it. The copy shares
+   * its contents with the source, so it should only be used for trees that
+   * will not be modified in place. Declines files on a different file system
+   * than the target, or file systems without hardlinks.
+   */
+  public static final CopyStrategy HARDLINK = (Path source, Path target) -> {
+    try {
+      Files.createLink(target, source);
+      return true;
+    } catch (UnsupportedOperationException ex) {
+      return false;
+    } catch (FileSystemException ex) {
+      // Cross device links and link count limits are reported without a more
+      // specific subclass. Anything more specific is a real failure.
+      if (ex.getClass() == FileSystemException.class)
+        return false;
+      throw ex;
+    }
+  };
+
+  /**
+   * Creates a copy-on-write clone (reflink) of the source. The clone takes no
+   * extra space until one of the files is modified. Only supported on Linux
+   * with a file system that has reflinks (btrfs, xfs, ...); declines every
+   * other file. Once a file store rejects a clone, every later file copied
+   * onto it is declined without trying.
+   */
+  public static final CopyStrategy REFLINK = new ReflinkStrategy();
+
+  private CopyStrategies() {
+  }
+
+  /**
+   * Creates a strategy that tries each of the given strategies in order and
+   * uses the first one that supports the file.
+   *
+   * @param strategies
+   *     The strategies to try, most preferred first.
+   * @return The combined strategy.
+   */
+  public static CopyStrategy firstOf(CopyStrategy... strategies) {
+    final CopyStrategy[] copy = strategies.clone();
+    return (Path source, Path target) -> {
+      for (CopyStrategy i : copy)
+        if (i.copy(source, target))
+          return true;
+      return false;
+    };
+  }
+
+  /**
+   * Copies a file with the given strategy, falling back to {@link #STREAM} if
+   * the strategy declines it.
+   *
+   * @param strategy
+   *     The preferred strategy.
+   * @param source
+   *     The file to copy.
+   * @param target
+   *     Where the copy should be created.
+   * @throws IOException
+   *     If copying failed.
+   */
+  static void copy(CopyStrategy strategy, Path source, Path target) throws IOException {
+    if (!strategy.copy(source, target))
+      STREAM.copy(source, target);
+  }
+
+  /**
+   * Clones files with GNU cp, since java has no access to the FICLONE ioctl.
+   */
+  private static final class ReflinkStrategy implements CopyStrategy {
+
+    private static final File DEV_NULL = new File("/dev/null");
+
+    private final boolean supportedOS
+        = System.getProperty("os.name").toUpperCase().contains("NUX");
+    private volatile boolean cpAvailable = true;
+    /**
+     * File stores cp failed to clone onto. Trying again would fork cp for
+     * every file only to fall back anyway.
+     */
+    private final Map<FileStore, Boolean> declined = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean copy(Path source, Path target) throws IOException {
+      if (!this.supportedOS || !this.cpAvailable)
+        return false;
+      // cp would silently overwrite the target.
+      if (Files.exists(target, LinkOption.NOFOLLOW_LINKS))
+        throw new FileAlreadyExistsException(target.toString());
+      final FileStore store = Files.getFileStore(target.toAbsolutePath().getParent());
+      if (this.declined.containsKey(store))
+        return false;
+
+      final Process process;
+      try {
+        process = new ProcessBuilder("cp", "--reflink=always", "--", source.toString(), target.toString())
+            .redirectErrorStream(true)
+            .redirectOutput(DEV_NULL)
+            .start();
+      } catch (IOException ex) {
+        this.cpAvailable = false;
+        return false;
+      }
+      try {
+        if (process.waitFor() == 0)
+          return true;
+      } catch (InterruptedException ex) {
+        process.destroy();
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while cloning " + source, ex);
+      }
+      Files.deleteIfExists(target);
+      this.declined.put(store, Boolean.TRUE);
+      return false;
+    }
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.lordcrekit.JEasy.io.files;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Decides how the bytes of a single file are copied. Strategies that can only
+ * handle some files (for example hardlinks, which only work inside one file
+ * system) decline the others by returning false, and the caller falls back to
+ * another strategy for that file.
+ *
+ * @author William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu)
+ * @see CopyStrategies
+ */
+public interface CopyStrategy {
+
+  /**
+   * Copies a single regular file. The target must not exist yet.
+   *
+   * @param source
+   *     The file to copy.
+   * @param target
+   *     Where the copy should be created.
+   * @return True if the file was copied, false if this strategy does not
+   * support copying this file and left the target untouched.
+   * @throws IOException
+   *     If the strategy supports the file but copying it failed.
+   */
+  boolean copy(Path source, Path target) throws IOException;
+}
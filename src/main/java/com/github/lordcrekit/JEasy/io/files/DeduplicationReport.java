@@ -0,0 +1,92 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.lordcrekit.JEasy.io.files;
+
+/**
+ * The outcome of {@link JEasyFiles#copyDirectoryDeduplicated(java.nio.file.Path,
+ * java.nio.file.Path, CopyOptions)}.
+ *
+ * @author William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu)
+ */
+public final class DeduplicationReport {
+
+  private final long uniqueFiles;
+  private final long duplicateFiles;
+  private final long linkedFiles;
+  private final long bytesSaved;
+
+  DeduplicationReport(long uniqueFiles, long duplicateFiles, long linkedFiles, long bytesSaved) {
+    this.uniqueFiles = uniqueFiles;
+    this.duplicateFiles = duplicateFiles;
+    this.linkedFiles = linkedFiles;
+    this.bytesSaved = bytesSaved;
+  }
+
+  /**
+   * Gets the number of files whose contents were written to the destination.
+   * This is one file for each distinct content in the source tree.
+   *
+   * @return The number of files copied.
+   */
+  public long getUniqueFiles() {
+    return this.uniqueFiles;
+  }
+
+  /**
+   * Gets the number of files that have the same contents as another file of
+   * the source tree.
+   *
+   * @return The number of duplicate files.
+   */
+  public long getDuplicateFiles() {
+    return this.duplicateFiles;
+  }
+
+  /**
+   * Gets the number of duplicate files that were linked to their original
+   * instead of copied. Duplicates that could not be linked, for example on a
+   * file system without hardlinks, are copied normally.
+   *
+   * @return The number of linked files.
+   */
+  public long getLinkedFiles() {
+    return this.linkedFiles;
+  }
+
+  /**
+   * Gets the number of bytes that did not have to be written because their
+   * file was linked.
+   *
+   * @return The bytes saved.
+   */
+  public long getBytesSaved() {
+    return this.bytesSaved;
+  }
+
+  @Override
+  public String toString() {
+    return this.uniqueFiles + " unique, " + this.duplicateFiles + " duplicate (" + this.linkedFiles
+        + " linked), " + this.bytesSaved + " bytes saved";
+  }
+}
@@ -0,0 +1,591 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.lordcrekit.JEasy.io.files;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streams directory trees to and from tar.gz archives. Exporting writes the
+ * archive directly from the tree, with no staged copy on disk, and compresses
+ * on several threads (see {@link ParallelGzipOutputStream}). Importing writes
+ * the extracted files on several threads.
+ * <p>
+ * Archives are plain ustar with GNU long name entries, so they can be read
+ * and written by tar as well. Only regular files and directories are
+ * archived. On file systems with POSIX permissions, the permissions of each
+ * file and directory are archived and restored; elsewhere directories are
+ * archived as 0755 and files as 0644.
+ *
+ * @author William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu)
+ */
+public final class DirectoryArchive {
+
+  private static final int RECORD = 512;
+  private static final String LONG_NAME = "././@LongLink";
+  private static final byte TYPE_FILE = '0';
+  private static final byte TYPE_DIRECTORY = '5';
+  private static final byte TYPE_LONG_NAME = 'L';
+
+  /**
+   * Files up to this size are read into memory and written by a helper
+   * thread during import; larger files are written by the reading thread.
+   */
+  private static final int BUFFERED_FILE_LIMIT = 4 * 1024 * 1024;
+
+  private DirectoryArchive() {
+  }
+
+  /**
+   * Writes a directory tree to a tar.gz file. The archive is written to a
+   * temporary file next to it, which is moved into place once it is
+   * complete, so a failed export leaves no partial archive behind.
+   *
+   * @param directory
+   *     The root of the tree. The archive holds its contents, not the
+   *     directory itself.
+   * @param archive
+   *     The archive file to create.
+   * @param parallelism
+   *     The number of compressing threads.
+   * @throws IOException
+   *     If the tree could not be read or the archive could not be written.
+   */
+  public static void exportTarGz(Path directory, Path archive, int parallelism) throws IOException {
+    final Path temp = archive.resolveSibling("." + archive.getFileName() + "." + UUID.randomUUID() + ".tmp");
+    try {
+      try (OutputStream out = Files.newOutputStream(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+        exportTarGz(directory, out, parallelism);
+      }
+      Files.move(temp, archive, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Writes a directory tree to a stream as a tar.gz archive. The stream is
+   * not closed.
+   *
+   * @param directory
+   *     The root of the tree. The archive holds its contents, not the
+   *     directory itself.
+   * @param out
+   *     The stream to write the archive to.
+   * @param parallelism
+   *     The number of compressing threads.
+   * @throws IOException
+   *     If the tree could not be read or the archive could not be written.
+   */
+  public static void exportTarGz(Path directory, OutputStream out, int parallelism) throws IOException {
+    if (parallelism < 1)
+      throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+
+    final boolean posix = isPosix(directory);
+    final ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(new NonClosingOutputStream(out), parallelism);
+    try (OutputStream tar = new BufferedOutputStream(gzip, 64 * 1024)) {
+      final byte[] buffer = new byte[64 * 1024];
+      Files.walkFileTree(directory, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+          new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+              if (!dir.equals(directory))
+                writeHeader(tar, entryName(directory, dir) + '/', TYPE_DIRECTORY, posix ? mode(dir) : 0755, 0,
+                    attrs.lastModifiedTime());
+              return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+              if (!attrs.isRegularFile())
+                return FileVisitResult.CONTINUE;
+              final long size = attrs.size();
+              writeHeader(tar, entryName(directory, file), TYPE_FILE, posix ? mode(file) : 0644, size,
+                  attrs.lastModifiedTime());
+              long written = 0;
+              try (InputStream in = Files.newInputStream(file)) {
+                int read;
+                while (written < size && (read = in.read(buffer, 0, (int) Math.min(buffer.length, size - written))) != -1) {
+                  tar.write(buffer, 0, read);
+                  written += read;
+                }
+              }
+              if (written != size)
+                throw new IOException("File changed size while archiving: " + file);
+              pad(tar, size);
+              return FileVisitResult.CONTINUE;
+            }
+          });
+      tar.write(new byte[2 * RECORD]);
+    }
+  }
+
+  /**
+   * Extracts a tar.gz file into a directory.
+   *
+   * @param archive
+   *     The archive file.
+   * @param destination
+   *     The directory to extract into. Created if it does not exist.
+   * @param parallelism
+   *     The maximum number of files written at the same time.
+   * @throws IOException
+   *     If the archive could not be read or is corrupt, or any file failed to
+   *     extract. Every failed file is attached as a suppressed exception.
+   */
+  public static void importTarGz(Path archive, Path destination, int parallelism) throws IOException {
+    try (InputStream in = Files.newInputStream(archive)) {
+      importTarGz(in, destination, parallelism);
+    }
+  }
+
+  /**
+   * Extracts a tar.gz archive from a stream into a directory. The stream is
+   * read to the end of the archive but not closed.
+   *
+   * @param in
+   *     The stream to read the archive from.
+   * @param destination
+   *     The directory to extract into. Created if it does not exist.
+   * @param parallelism
+   *     The maximum number of files written at the same time.
+   * @throws IOException
+   *     If the archive could not be read or is corrupt, or any file failed to
+   *     extract. Every failed file is attached as a suppressed exception.
+   */
+  public static void importTarGz(InputStream in, Path destination, int parallelism) throws IOException {
+    if (parallelism < 1)
+      throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+
+    final Path root = destination.toAbsolutePath().normalize();
+    Files.createDirectories(root);
+    final boolean posix = isPosix(root);
+    final Map<Path, Integer> directoryModes = new LinkedHashMap<>();
+    final Queue<IOException> failures = new ConcurrentLinkedQueue<>();
+    final ExecutorService pool = new ForkJoinPool(parallelism);
+    final Semaphore buffered = new Semaphore(2 * parallelism);
+    try {
+      final DataInputStream tar = new DataInputStream(new BufferedInputStream(
+          new GzipMembersInputStream(new BufferedInputStream(in)), 64 * 1024));
+      final byte[] header = new byte[RECORD];
+      String longName = null;
+      while (true) {
+        tar.readFully(header);
+        if (isZero(header))
+          break;
+        verifyChecksum(header);
+
+        final byte type = header[156];
+        final long size = readNumber(header, 124, 12);
+        final String name = longName != null ? longName : readName(header);
+        longName = null;
+
+        if (type == TYPE_LONG_NAME) {
+          final byte[] bytes = new byte[(int) size];
+          tar.readFully(bytes);
+          skip(tar, padding(size));
+          longName = readString(bytes, 0, bytes.length);
+          continue;
+        }
+
+        final Path target = resolveEntry(root, name);
+        final FileTime modified = FileTime.from(readNumber(header, 136, 12), TimeUnit.SECONDS);
+        final int mode = (int) readNumber(header, 100, 8);
+        if (type == TYPE_DIRECTORY) {
+          Files.createDirectories(target);
+          // Set once every file is extracted, in case they make it read only.
+          if (posix)
+            directoryModes.put(target, mode);
+          skip(tar, size + padding(size));
+        } else if (type == TYPE_FILE || type == 0) {
+          Files.createDirectories(target.getParent());
+          if (size <= BUFFERED_FILE_LIMIT) {
+            final byte[] data = new byte[(int) size];
+            tar.readFully(data);
+            buffered.acquireUninterruptibly();
+            pool.execute(() -> {
+              try {
+                Files.write(target, data);
+                if (posix)
+                  Files.setPosixFilePermissions(target, permissions(mode));
+                Files.setLastModifiedTime(target, modified);
+              } catch (IOException ex) {
+                failures.add(ex);
+              } finally {
+                buffered.release();
+              }
+            });
+          } else {
+            try (OutputStream out = Files.newOutputStream(target)) {
+              copy(tar, out, size);
+            }
+            if (posix)
+              Files.setPosixFilePermissions(target, permissions(mode));
+            Files.setLastModifiedTime(target, modified);
+          }
+          skip(tar, padding(size));
+        } else
+          // Links, devices and extension headers are not extracted.
+          skip(tar, size + padding(size));
+      }
+    } catch (EOFException ex) {
+      throw new IOException("Truncated archive.", ex);
+    } finally {
+      pool.shutdown();
+      try {
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    // Children first, so a directory that can not be entered is set last.
+    final List<Map.Entry<Path, Integer>> directories = new ArrayList<>(directoryModes.entrySet());
+    Collections.reverse(directories);
+    for (Map.Entry<Path, Integer> i : directories)
+      try {
+        Files.setPosixFilePermissions(i.getKey(), permissions(i.getValue()));
+      } catch (IOException ex) {
+        failures.add(ex);
+      }
+    BulkOperation.throwIfFailed("Failed to extract", failures);
+  }
+
+  /**
+   * Writes a tar header, preceded by a long name entry if the name does not
+   * fit into the header.
+   */
+  private static void writeHeader(OutputStream tar, String name, byte type, int mode, long size, FileTime modified)
+      throws IOException {
+
+    final byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+    if (nameBytes.length > 100) {
+      writeHeader(tar, LONG_NAME, TYPE_LONG_NAME, 0644, nameBytes.length + 1, modified);
+      tar.write(nameBytes);
+      tar.write(0);
+      pad(tar, nameBytes.length + 1);
+    }
+
+    final byte[] header = new byte[RECORD];
+    System.arraycopy(nameBytes, 0, header, 0, Math.min(100, nameBytes.length));
+    writeOctal(header, 100, 8, mode);
+    writeOctal(header, 108, 8, 0);
+    writeOctal(header, 116, 8, 0);
+    writeNumber(header, 124, 12, size);
+    writeNumber(header, 136, 12, Math.max(0, modified.to(TimeUnit.SECONDS)));
+    Arrays.fill(header, 148, 156, (byte) ' ');
+    header[156] = type;
+    System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+
+    long checksum = 0;
+    for (byte b : header)
+      checksum += b & 0xFF;
+    writeOctal(header, 148, 7, checksum);
+    header[155] = ' ';
+    tar.write(header);
+  }
+
+  private static boolean isPosix(Path path) {
+    return path.getFileSystem().supportedFileAttributeViews().contains("posix");
+  }
+
+  /**
+   * Gets the permissions of a file as the permission bits of a tar mode.
+   */
+  private static int mode(Path path) throws IOException {
+    int output = 0;
+    for (PosixFilePermission i : Files.getPosixFilePermissions(path))
+      output |= 0400 >> i.ordinal();
+    return output;
+  }
+
+  /**
+   * Gets the permissions in the permission bits of a tar mode.
+   */
+  private static Set<PosixFilePermission> permissions(int mode) {
+    final Set<PosixFilePermission> output = EnumSet.noneOf(PosixFilePermission.class);
+    for (PosixFilePermission i : PosixFilePermission.values())
+      if ((mode & 0400 >> i.ordinal()) != 0)
+        output.add(i);
+    return output;
+  }
+
+  private static void verifyChecksum(byte[] header) throws IOException {
+    final long expected = readNumber(header, 148, 8);
+    long actual = 0;
+    for (int i = 0; i < RECORD; i++)
+      actual += i >= 148 && i < 156 ? ' ' : header[i] & 0xFF;
+    if (actual != expected)
+      throw new IOException("Corrupt archive: bad header checksum.");
+  }
+
+  /**
+   * Writes a number as a NUL terminated octal string, or in the GNU base-256
+   * encoding if it is too large for the field.
+   */
+  private static void writeNumber(byte[] header, int offset, int length, long value) {
+    if (value < 1L << (3 * (length - 1)))
+      writeOctal(header, offset, length, value);
+    else {
+      for (int i = offset + length - 1; i > offset; i--) {
+        header[i] = (byte) value;
+        value >>>= 8;
+      }
+      header[offset] = (byte) 0x80;
+    }
+  }
+
+  private static void writeOctal(byte[] header, int offset, int length, long value) {
+    final String octal = Long.toOctalString(value);
+    final int digits = length - 1;
+    for (int i = 0; i < digits; i++) {
+      final int j = i - (digits - octal.length());
+      header[offset + i] = (byte) (j < 0 ? '0' : octal.charAt(j));
+    }
+    header[offset + digits] = 0;
+  }
+
+  private static long readNumber(byte[] header, int offset, int length) throws IOException {
+    if ((header[offset] & 0x80) != 0) {
+      long value = 0;
+      for (int i = offset + 1; i < offset + length; i++)
+        value = (value << 8) | (header[i] & 0xFF);
+      return value;
+    }
+    final int end = offset + length;
+    int i = offset;
+    while (i < end && header[i] == ' ')
+      i++;
+    long value = 0;
+    for (; i < end; i++) {
+      final byte b = header[i];
+      if (b == 0 || b == ' ')
+        break;
+      if (b < '0' || b > '7')
+        throw new IOException("Corrupt archive: bad number in header.");
+      value = (value << 3) | (b - '0');
+    }
+    return value;
+  }
+
+  private static String readName(byte[] header) {
+    final String name = readString(header, 0, 100);
+    final boolean ustar = header[257] == 'u' && header[258] == 's' && header[259] == 't'
+        && header[260] == 'a' && header[261] == 'r';
+    final String prefix = ustar ? readString(header, 345, 155) : "";
+    return prefix.isEmpty() ? name : prefix + '/' + name;
+  }
+
+  private static String readString(byte[] bytes, int offset, int length) {
+    int end = offset;
+    while (end < offset + length && bytes[end] != 0)
+      end++;
+    return new String(bytes, offset, end - offset, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Resolves an entry name inside of the destination, refusing names that
+   * would escape it.
+   */
+  private static Path resolveEntry(Path root, String name) throws IOException {
+    final Path target = root.resolve(name.startsWith("/") ? name.substring(1) : name).normalize();
+    if (!target.startsWith(root))
+      throw new IOException("Archive entry outside of the destination: " + name);
+    return target;
+  }
+
+  private static String entryName(Path root, Path path) {
+    final StringBuilder strb = new StringBuilder();
+    for (Path name : root.relativize(path)) {
+      if (strb.length() > 0)
+        strb.append('/');
+      strb.append(name);
+    }
+    return strb.toString();
+  }
+
+  private static long padding(long size) {
+    return (RECORD - size % RECORD) % RECORD;
+  }
+
+  private static void pad(OutputStream tar, long size) throws IOException {
+    tar.write(new byte[(int) padding(size)]);
+  }
+
+  private static void copy(InputStream in, OutputStream out, long size) throws IOException {
+    final byte[] buffer = new byte[64 * 1024];
+    while (size > 0) {
+      final int read = in.read(buffer, 0, (int) Math.min(buffer.length, size));
+      if (read == -1)
+        throw new EOFException();
+      out.write(buffer, 0, read);
+      size -= read;
+    }
+  }
+
+  private static void skip(DataInputStream in, long count) throws IOException {
+    while (count > 0) {
+      final long skipped = in.skip(count);
+      if (skipped <= 0) {
+        if (in.read() == -1)
+          throw new EOFException();
+        count--;
+      } else
+        count -= skipped;
+    }
+  }
+
+  private static boolean isZero(byte[] record) {
+    for (byte b : record)
+      if (b != 0)
+        return false;
+    return true;
+  }
+
+  /**
+   * Lets the archive be finished without closing the caller's stream.
+   */
+  private static final class NonClosingOutputStream extends FilterOutputStream {
+
+    NonClosingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      this.out.write(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+      flush();
+    }
+  }
+
+  /**
+   * Reads every member of a stream of concatenated gzip members, as written
+   * by {@link ParallelGzipOutputStream}. {@link GZIPInputStream} only goes on
+   * to the next member if it has already buffered its header, or if the
+   * stream has bytes available, so on a pipe or socket it can stop at any
+   * member boundary. Each member is read by its own GZIPInputStream instead,
+   * and whatever it read past its end is pushed back for the next one.
+   */
+  private static final class GzipMembersInputStream extends InputStream {
+
+    private final PushbackInputStream in;
+    private Member member;
+
+    GzipMembersInputStream(InputStream in) {
+      this.in = new PushbackInputStream(in, 64 * 1024);
+    }
+
+    @Override
+    public int read() throws IOException {
+      final byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0)
+        return 0;
+      while (true) {
+        if (this.member == null) {
+          final int next = this.in.read();
+          if (next == -1)
+            return -1;
+          this.in.unread(next);
+          this.member = new Member(this.in);
+        }
+        final int output = this.member.read(b, off, len);
+        if (output != -1)
+          return output;
+        this.member = null;
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      this.in.close();
+    }
+  }
+
+  /**
+   * Reads one gzip member, or several if GZIPInputStream goes on by itself.
+   * Once it ends, the bytes it read past the 8 byte trailer are pushed back.
+   */
+  private static final class Member extends GZIPInputStream {
+
+    private boolean ended;
+
+    Member(PushbackInputStream in) throws IOException {
+      super(in, 64 * 1024);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      final int output = super.read(b, off, len);
+      if (output == -1 && !this.ended) {
+        this.ended = true;
+        final int remaining = this.inf.getRemaining() - 8;
+        if (remaining > 0)
+          ((PushbackInputStream) this.in).unread(this.buf, this.len - remaining, remaining);
+      }
+      return output;
+    }
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.lordcrekit.JEasy.io.files;
+
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Implementation of {@link JEasyFiles#copyDirectory(Path, Path, CopyOptions)}.
+ *
+ * @author William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu)
+ */
+final class DirectoryCopier {
+
+  private DirectoryCopier() {
+  }
+
+  /**
+   * Creates every directory of the source tree in the destination, then
+   * copies the files in parallel.
+   *
+   * @param source
+   *     The directory to copy.
+   * @param destination
+   *     The destination to copy the directory to.
+   * @param options
+   *     How the copy should be performed.
+   * @param metrics
+   *     Where every copied file is recorded, or null.
+   * @param control
+   *     Where helpers run and whether the copy was cancelled.
+   * @throws IOException
+   *     If the directory structure could not be created, or if any file failed
+   *     to copy.
+   */
+  static void copy(Path source, Path destination, CopyOptions options, FileOperationMetrics metrics,
+      OperationControl control) throws IOException {
+
+    if (!Files.isDirectory(source)) {
+      FileCopier.copy(source, destination, Files.size(source), options, control);
+      return;
+    }
+
+    final List<Path> files = new ArrayList<>();
+    Files.walkFileTree(source, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+            if (control.isCancelled())
+              return FileVisitResult.TERMINATE;
+            Files.createDirectories(JEasyFiles.resolve(source, destination, dir));
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            files.add(file);
+            return FileVisitResult.CONTINUE;
+          }
+        });
+    control.throwIfCancelled();
+
+    BulkOperation.run(files, options.getParallelism(), (Path file) -> {
+      final Path target = JEasyFiles.resolve(source, destination, file);
+      final long size = Files.size(file);
+      FileCopier.copy(file, target, size, options, control);
+      return size;
+    }, "Failed to copy", metrics, control);
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.lordcrekit.JEasy.io.files;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Implementation of {@link JEasyFiles#copyDirectoryDeduplicated(Path, Path,
+ * CopyOptions)}.
+ *
+ * @author William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu)
+ */
+final class DirectoryDeduplicator {
+
+  /**
+   * How duplicates are linked to the copy of their original.
+   */
+  private static final CopyStrategy LINK = CopyStrategies.firstOf(CopyStrategies.HARDLINK, CopyStrategies.REFLINK);
+
+  private DirectoryDeduplicator() {
+  }
+
+  /**
+   * Copies a tree, writing each distinct content only once. Files are grouped
+   * by size, and only files that share their size with another file are
+   * hashed. The first file of every group of identical files is copied with
+   * the strategy of the options, then the rest of the group is linked to that
+   * copy.
+   *
+   * @param source
+   *     The directory to copy.
+   * @param destination
+   *     The destination to copy the directory to.
+   * @param options
+   *     How the unique files should be copied.
+   * @return What was copied and linked.
+   * @throws IOException
+   *     If the directory structure could not be created, or if any file failed
+   *     to be hashed, copied or linked.
+   */
+  static DeduplicationReport copy(Path source, Path destination, CopyOptions options) throws IOException {
+    final Map<Long, List<Path>> bySize = new LinkedHashMap<>();
+    Files.walkFileTree(source, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+            Files.createDirectories(JEasyFiles.resolve(source, destination, dir));
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            bySize.computeIfAbsent(attrs.size(), (Long size) -> new ArrayList<>()).add(file);
+            return FileVisitResult.CONTINUE;
+          }
+        });
+
+    // Empty files are all identical, but linking them saves nothing.
+    final List<Path> toHash = new ArrayList<>();
+    for (Map.Entry<Long, List<Path>> i : bySize.entrySet())
+      if (i.getKey() > 0 && i.getValue().size() > 1)
+        toHash.addAll(i.getValue());
+
+    final Map<Path, ByteBuffer> hashes = new ConcurrentHashMap<>();
+    BulkOperation.run(toHash, options.getParallelism(),
+        (Path file) -> hashes.put(file, ByteBuffer.wrap(FileHashing.hash(file))), "Failed to hash");
+
+    // Maps every duplicate to the original whose copy it is linked to.
+    final List<Path> unique = new ArrayList<>();
+    final Map<Path, Path> duplicates = new HashMap<>();
+    final Map<Path, Long> sizes = new HashMap<>();
+    for (Map.Entry<Long, List<Path>> i : bySize.entrySet()) {
+      final Map<ByteBuffer, Path> originals = new HashMap<>();
+      for (Path file : i.getValue()) {
+        final ByteBuffer hash = hashes.get(file);
+        final Path original = hash == null ? null : originals.putIfAbsent(hash, file);
+        if (original == null) {
+          unique.add(file);
+        } else {
+          duplicates.put(file, original);
+          sizes.put(file, i.getKey());
+        }
+      }
+    }
+
+    final FileOperationMetrics metrics = options.getMetrics();
+    final OperationControl control = OperationControl.blocking();
+    BulkOperation.run(unique, options.getParallelism(), (Path file) -> {
+      final Path target = JEasyFiles.resolve(source, destination, file);
+      final long size = Files.size(file);
+      FileCopier.copy(file, target, size, options, control);
+      return size;
+    }, "Failed to copy", metrics, control);
+
+    final LongAdder linked = new LongAdder();
+    final LongAdder bytesSaved = new LongAdder();
+    BulkOperation.run(new ArrayList<>(duplicates.keySet()), options.getParallelism(), (Path file) -> {
+      final Path original = JEasyFiles.resolve(source, destination, duplicates.get(file));
+      final Path target = JEasyFiles.resolve(source, destination, file);
+      final long size = sizes.get(file);
+      if (LINK.copy(original, target)) {
+        linked.increment();
+        bytesSaved.add(size);
+        // Linking moves no file contents.
+        return 0;
+      }
+      FileCopier.copy(original, target, size, options, control);
+      return size;
+    }, "Failed to link", metrics, control);
+
+    return new DeduplicationReport(unique.size(), duplicates.size(), linked.sum(), bytesSaved.sum());
+  }
+}
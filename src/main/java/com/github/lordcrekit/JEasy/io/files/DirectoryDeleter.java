@@ -0,0 +1,108 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.lordcrekit.JEasy.io.files;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Implementation of {@link JEasyFiles#deleteDirectory(Path, int)}. The tree is
+ * walked iteratively, so its depth is not limited by the stack size. Symbolic
+ * links are deleted, never followed.
+ *
+ * @author William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu)
+ */
+final class DirectoryDeleter {
+
+  private DirectoryDeleter() {
+  }
+
+  /**
+   * Deletes a directory tree. All files are deleted first, then the
+   * directories one depth at a time, deepest first, so that every directory is
+   * empty by the time it is deleted.
+   *
+   * @param directory
+   *     The directory to delete.
+   * @param parallelism
+   *     The maximum number of entries deleted at the same time.
+   * @param metrics
+   *     Where every deleted entry is recorded, or null.
+   * @param control
+   *     Where helpers run and whether the delete was cancelled.
+   * @throws IOException
+   *     If the tree could not be walked or anything failed to delete.
+   */
+  static void delete(Path directory, int parallelism, FileOperationMetrics metrics, OperationControl control)
+      throws IOException {
+
+    final List<Path> files = new ArrayList<>();
+    final List<List<Path>> directoriesByDepth = new ArrayList<>();
+    Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+      private int depth = -1;
+
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+        if (control.isCancelled())
+          return FileVisitResult.TERMINATE;
+        if (++this.depth == directoriesByDepth.size())
+          directoriesByDepth.add(new ArrayList<>());
+        directoriesByDepth.get(this.depth).add(dir);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        files.add(file);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(Path dir, IOException ex) throws IOException {
+        if (ex != null)
+          throw ex;
+        this.depth--;
+        return FileVisitResult.CONTINUE;
+      }
+    });
+
+    control.throwIfCancelled();
+
+    BulkOperation.run(files, parallelism, DirectoryDeleter::delete, "Failed to delete", metrics, control);
+    for (int i = directoriesByDepth.size() - 1; i >= 0; i--)
+      BulkOperation.run(directoriesByDepth.get(i), parallelism, DirectoryDeleter::delete, "Failed to delete",
+          metrics, control);
+  }
+
+  private static long delete(Path path) throws IOException {
+    Files.delete(path);
+    return 0;
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.lordcrekit.JEasy.io.files;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The differences between two directory trees, as found by {@link
+ * JEasyFiles#diffDirectories(Path, Path)}. Every entry is a path relative to
+ * the roots of the trees, and every list is sorted.
+ *
+ * @author William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu)
+ */
+public final class DirectoryDiff {
+
+  private final List<Path> added;
+  private final List<Path> removed;
+  private final List<Path> modified;
+  private final List<Path> unchanged;
+
+  DirectoryDiff(Collection<Path> added, Collection<Path> removed, Collection<Path> modified,
+      Collection<Path> unchanged) {
+
+    this.added = sorted(added);
+    this.removed = sorted(removed);
+    this.modified = sorted(modified);
+    this.unchanged = sorted(unchanged);
+  }
+
+  /**
+   * Gets the entries that only exist in the second tree.
+   *
+   * @return The added entries.
+   */
+  public List<Path> getAdded() {
+    return this.added;
+  }
+
+  /**
+   * Gets the entries that only exist in the first tree.
+   *
+   * @return The removed entries.
+   */
+  public List<Path> getRemoved() {
+    return this.removed;
+  }
+
+  /**
+   * Gets the files whose contents differ, and the entries that are a file in
+   * one tree and a directory in the other.
+   *
+   * @return The modified entries.
+   */
+  public List<Path> getModified() {
+    return this.modified;
+  }
+
+  /**
+   * Gets the files with identical contents, and the directories that exist in
+   * both trees.
+   *
+   * @return The unchanged entries.
+   */
+  public List<Path> getUnchanged() {
+    return this.unchanged;
+  }
+
+  /**
+   * Checks if both trees are identical.
+   *
+   * @return True if nothing was added, removed or modified.
+   */
+  public boolean isIdentical() {
+    return this.added.isEmpty() && this.removed.isEmpty() && this.modified.isEmpty();
+  }
+
+  @Override
+  public String toString() {
+    return "{added=" + this.added + ", removed=" + this.removed + ", modified=" + this.modified
+        + ", unchanged=" + this.unchanged.size() + '}';
+  }
+
+  private static List<Path> sorted(Collection<Path> paths) {
+    final List<Path> output = new ArrayList<>(paths);
+    Collections.sort(output);
+    return Collections.unmodifiableList(output);
+  }
+}
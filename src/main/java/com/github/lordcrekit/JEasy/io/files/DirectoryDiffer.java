@@ -0,0 +1,117 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.lordcrekit.JEasy.io.files;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Implementation of {@link JEasyFiles#diffDirectories(Path, Path, int,
+ * FileHashCache)}.
+ *
+ * @author William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu)
+ */
+final class DirectoryDiffer {
+
+  private DirectoryDiffer() {
+  }
+
+  /**
+   * Compares two trees. Files of equal size are hashed in parallel; files of
+   * different size are modified without being read.
+   *
+   * @param dir1
+   *     The first tree.
+   * @param dir2
+   *     The second tree.
+   * @param parallelism
+   *     The maximum number of files hashed at the same time.
+   * @param cache
+   *     The cache to look hashes up in, or null to always read the files.
+   * @return The differences.
+   * @throws IOException
+   *     If either tree could not be walked or any file could not be hashed.
+   */
+  static DirectoryDiff diff(Path dir1, Path dir2, int parallelism, FileHashCache cache) throws IOException {
+    final Map<Path, BasicFileAttributes> entries1 = walk(dir1);
+    final Map<Path, BasicFileAttributes> entries2 = walk(dir2);
+
+    final List<Path> added = new ArrayList<>();
+    final List<Path> removed = new ArrayList<>();
+    final Queue<Path> modified = new ConcurrentLinkedQueue<>();
+    final Queue<Path> unchanged = new ConcurrentLinkedQueue<>();
+    final List<Path> toHash = new ArrayList<>();
+
+    for (Map.Entry<Path, BasicFileAttributes> i : entries1.entrySet()) {
+      final BasicFileAttributes attrs1 = i.getValue();
+      final BasicFileAttributes attrs2 = entries2.get(i.getKey());
+      if (attrs2 == null)
+        removed.add(i.getKey());
+      else if (attrs1.isDirectory() != attrs2.isDirectory())
+        modified.add(i.getKey());
+      else if (attrs1.isDirectory())
+        unchanged.add(i.getKey());
+      else if (attrs1.size() != attrs2.size())
+        modified.add(i.getKey());
+      else
+        toHash.add(i.getKey());
+    }
+    for (Path i : entries2.keySet())
+      if (!entries1.containsKey(i))
+        added.add(i);
+
+    BulkOperation.run(toHash, parallelism, (Path relative) -> {
+      final Path file1 = dir1.resolve(relative.toString());
+      final Path file2 = dir2.resolve(relative.toString());
+      final boolean equal = cache == null
+          ? FileHashing.isContentEqual(file1, file2)
+          : Arrays.equals(cache.hash(file1, entries1.get(relative)), cache.hash(file2, entries2.get(relative)));
+      (equal ? unchanged : modified).add(relative);
+    }, "Failed to hash");
+
+    return new DirectoryDiff(added, removed, modified, unchanged);
+  }
+
+  private static Map<Path, BasicFileAttributes> walk(Path root) throws IOException {
+    try (Stream<FileTree.Entry> tree = FileTree.walk(root, true)) {
+      return tree.parallel()
+          .filter((FileTree.Entry i) -> !i.getPath().equals(root))
+          .collect(Collectors.toConcurrentMap((FileTree.Entry i) -> root.relativize(i.getPath()),
+              FileTree.Entry::getAttributes));
+    } catch (UncheckedIOException ex) {
+      throw ex.getCause();
+    }
+  }
+}
@@ -0,0 +1,532 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.lordcrekit.JEasy.io.files;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * A snapshot of a directory tree: the sorted relative paths of every entry,
+ * whether it is a directory, and the size, modified time and (optionally)
+ * content hash of every file. A snapshot can be written to a compact binary
+ * file and loaded again later, so a tree can be compared with an earlier state
+ * of itself, or with another tree, without walking both trees.
+ * <p>
+ * Relative paths always use '/' as separator, whatever the platform.
+ *
+ * @author William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu)
+ */
+public final class DirectoryManifest {
+
+  private static final int MAGIC = 0x4A454D46; // "JEMF"
+  private static final byte VERSION = 1;
+  private static final byte FLAG_HASHES = 1;
+
+  private final List<Entry> entries;
+  private final boolean hashes;
+
+  private DirectoryManifest(List<Entry> entries, boolean hashes) {
+    this.entries = Collections.unmodifiableList(entries);
+    this.hashes = hashes;
+  }
+
+  /**
+   * Takes a snapshot of a tree without content hashes.
+   *
+   * @param root
+   *     The root of the tree.
+   * @return The snapshot.
+   * @throws IOException
+   *     If the tree could not be walked.
+   */
+  public static DirectoryManifest snapshot(Path root) throws IOException {
+    return new DirectoryManifest(walk(root), false);
+  }
+
+  /**
+   * Takes a snapshot of a tree including the content hash of every file.
+   *
+   * @param root
+   *     The root of the tree.
+   * @param parallelism
+   *     The maximum number of files hashed at the same time.
+   * @param cache
+   *     Cache of previously computed hashes, or null to hash every file.
+   * @return The snapshot.
+   * @throws IOException
+   *     If the tree could not be walked or any file could not be read.
+   */
+  public static DirectoryManifest snapshot(Path root, int parallelism, FileHashCache cache) throws IOException {
+    final List<Entry> entries = walk(root);
+    final List<Entry> files = new ArrayList<>();
+    for (Entry i : entries)
+      if (!i.directory)
+        files.add(i);
+    BulkOperation.run(files, parallelism,
+        (Entry e) -> e.hash = hash(root.resolve(e.path), cache), "Failed to hash");
+    return new DirectoryManifest(entries, true);
+  }
+
+  /**
+   * Loads a manifest written by {@link #write(Path)}. Every entry is decoded
+   * straight away, so the file is read in full rather than mapped.
+   *
+   * @param file
+   *     The manifest file.
+   * @return The loaded manifest.
+   * @throws IOException
+   *     If the file could not be read, is not a manifest, or is corrupt.
+   */
+  public static DirectoryManifest load(Path file) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+    try {
+      return decode(buffer);
+    } catch (BufferUnderflowException | IllegalArgumentException ex) {
+      throw new IOException("Corrupt manifest: " + file, ex);
+    }
+  }
+
+  /**
+   * Writes the manifest to a file. The file is replaced atomically.
+   *
+   * @param file
+   *     The file to write to.
+   * @return Pointer back to this object.
+   * @throws IOException
+   *     If the file could not be written.
+   */
+  public DirectoryManifest write(Path file) throws IOException {
+    final Path temp = file.resolveSibling("." + file.getFileName() + "." + UUID.randomUUID() + ".tmp");
+    try {
+      try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp, StandardOpenOption.CREATE_NEW))) {
+        encode(out);
+      }
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+    return this;
+  }
+
+  /**
+   * Gets every entry in the snapshot, sorted by path.
+   *
+   * @return The entries.
+   */
+  public List<Entry> getEntries() {
+    return this.entries;
+  }
+
+  /**
+   * Gets the entry with the given relative path.
+   *
+   * @param path
+   *     The relative path, using '/' as separator.
+   * @return The entry, or null if the snapshot has no such entry.
+   */
+  public Entry getEntry(String path) {
+    int low = 0;
+    int high = this.entries.size() - 1;
+    while (low <= high) {
+      final int mid = (low + high) >>> 1;
+      final int cmp = this.entries.get(mid).path.compareTo(path);
+      if (cmp < 0)
+        low = mid + 1;
+      else if (cmp > 0)
+        high = mid - 1;
+      else
+        return this.entries.get(mid);
+    }
+    return null;
+  }
+
+  /**
+   * Checks if the snapshot includes content hashes.
+   *
+   * @return True if every file entry has a content hash.
+   */
+  public boolean hasHashes() {
+    return this.hashes;
+  }
+
+  /**
+   * Checks if another snapshot has the same structure: the same paths, each
+   * being a directory in both or a file in both.
+   *
+   * @param other
+   *     The snapshot to compare with.
+   * @return True if both snapshots have the same structure.
+   */
+  public boolean isStructureEqual(DirectoryManifest other) {
+    if (this.entries.size() != other.entries.size())
+      return false;
+    for (int i = 0; i < this.entries.size(); i++) {
+      final Entry e1 = this.entries.get(i);
+      final Entry e2 = other.entries.get(i);
+      if (e1.directory != e2.directory || !e1.path.equals(e2.path))
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Compares this (older) snapshot with a newer one. Files are compared by
+   * content hash if both snapshots have hashes, otherwise by size and modified
+   * time.
+   *
+   * @param newer
+   *     The newer snapshot.
+   * @return The differences.
+   */
+  public DirectoryDiff diff(DirectoryManifest newer) {
+    final List<Path> added = new ArrayList<>();
+    final List<Path> removed = new ArrayList<>();
+    final List<Path> modified = new ArrayList<>();
+    final List<Path> unchanged = new ArrayList<>();
+    final boolean compareHashes = this.hashes && newer.hashes;
+
+    int i = 0;
+    int j = 0;
+    while (i < this.entries.size() || j < newer.entries.size()) {
+      final Entry e1 = i < this.entries.size() ? this.entries.get(i) : null;
+      final Entry e2 = j < newer.entries.size() ? newer.entries.get(j) : null;
+      final int cmp = e1 == null ? 1 : e2 == null ? -1 : e1.path.compareTo(e2.path);
+      if (cmp < 0) {
+        removed.add(e1.toPath());
+        i++;
+      } else if (cmp > 0) {
+        added.add(e2.toPath());
+        j++;
+      } else {
+        final boolean same = e1.directory == e2.directory && (e1.directory
+            || e1.size == e2.size && (compareHashes
+            ? Arrays.equals(e1.hash, e2.hash)
+            : e1.lastModified == e2.lastModified));
+        (same ? unchanged : modified).add(e1.toPath());
+        i++;
+        j++;
+      }
+    }
+    return new DirectoryDiff(added, removed, modified, unchanged);
+  }
+
+  /**
+   * Compares this (older) snapshot with the current state of a tree, walking
+   * only that tree. A file whose size and modified time still match the
+   * snapshot is unchanged without being read. If the snapshot has hashes, a
+   * file of the same size but a different modified time is hashed to decide.
+   *
+   * @param root
+   *     The root of the tree.
+   * @param parallelism
+   *     The maximum number of files hashed at the same time.
+   * @param cache
+   *     Cache of previously computed hashes, or null to hash every file that
+   *     needs it.
+   * @return The differences.
+   * @throws IOException
+   *     If the tree could not be walked or any file could not be read.
+   */
+  public DirectoryDiff diff(Path root, int parallelism, FileHashCache cache) throws IOException {
+    final DirectoryManifest current = snapshot(root);
+    if (!this.hashes)
+      return diff(current);
+
+    final List<Path> added = new ArrayList<>();
+    final List<Path> removed = new ArrayList<>();
+    final Queue<Path> modified = new ConcurrentLinkedQueue<>();
+    final Queue<Path> unchanged = new ConcurrentLinkedQueue<>();
+    final List<Entry[]> toHash = new ArrayList<>();
+
+    final DirectoryDiff metadata = diff(current);
+    added.addAll(metadata.getAdded());
+    removed.addAll(metadata.getRemoved());
+    unchanged.addAll(metadata.getUnchanged());
+    for (Path p : metadata.getModified()) {
+      final String path = toString(p);
+      final Entry e1 = getEntry(path);
+      final Entry e2 = current.getEntry(path);
+      if (e1.directory == e2.directory && e1.size == e2.size)
+        toHash.add(new Entry[]{e1, e2});
+      else
+        modified.add(p);
+    }
+
+    BulkOperation.run(toHash, parallelism, (Entry[] pair) -> {
+      final boolean same = Arrays.equals(pair[0].hash, hash(root.resolve(pair[1].path), cache));
+      (same ? unchanged : modified).add(pair[1].toPath());
+    }, "Failed to hash");
+    return new DirectoryDiff(added, removed, modified, unchanged);
+  }
+
+  @Override
+  public String toString() {
+    return "DirectoryManifest{entries=" + this.entries.size() + ", hashes=" + this.hashes + '}';
+  }
+
+  /**
+   * Writes the binary form of the manifest. Paths are prefix compressed
+   * against the previous path, and numbers are written as variable length
+   * integers. A CRC32 of everything before it ends the file.
+   */
+  private void encode(OutputStream out) throws IOException {
+    final CRC32 crc = new CRC32();
+    final ByteArrayOutputStream block = new ByteArrayOutputStream();
+    block.write(ByteBuffer.allocate(4).putInt(MAGIC).array());
+    block.write(VERSION);
+    block.write(this.hashes ? FLAG_HASHES : 0);
+    block.write(this.hashes ? FileHashing.newDigest().getDigestLength() : 0);
+    writeVarLong(block, this.entries.size());
+
+    byte[] previous = new byte[0];
+    for (Entry e : this.entries) {
+      final byte[] path = e.path.getBytes(StandardCharsets.UTF_8);
+      int shared = 0;
+      while (shared < previous.length && shared < path.length && previous[shared] == path[shared])
+        shared++;
+      writeVarLong(block, shared);
+      writeVarLong(block, path.length - shared);
+      block.write(path, shared, path.length - shared);
+      block.write(e.directory ? 1 : 0);
+      if (!e.directory) {
+        writeVarLong(block, e.size);
+        writeVarLong(block, zigZag(e.lastModified));
+        if (this.hashes)
+          block.write(e.hash);
+      }
+      previous = path;
+
+      if (block.size() >= 64 * 1024)
+        flush(block, crc, out);
+    }
+    flush(block, crc, out);
+    out.write(ByteBuffer.allocate(4).putInt((int) crc.getValue()).array());
+  }
+
+  private static void flush(ByteArrayOutputStream block, CRC32 crc, OutputStream out) throws IOException {
+    final byte[] bytes = block.toByteArray();
+    crc.update(bytes, 0, bytes.length);
+    out.write(bytes);
+    block.reset();
+  }
+
+  private static DirectoryManifest decode(ByteBuffer buffer) throws IOException {
+    if (buffer.remaining() < 4 || buffer.getInt(0) != MAGIC)
+      throw new IOException("Not a directory manifest.");
+    final CRC32 crc = new CRC32();
+    final ByteBuffer body = buffer.duplicate();
+    body.limit(buffer.limit() - 4);
+    crc.update(body);
+    if ((int) crc.getValue() != buffer.getInt(buffer.limit() - 4))
+      throw new IOException("Manifest checksum mismatch.");
+
+    buffer.position(4);
+    if (buffer.get() != VERSION)
+      throw new IOException("Unsupported manifest version.");
+    final boolean hashes = (buffer.get() & FLAG_HASHES) != 0;
+    final int hashLength = buffer.get() & 0xFF;
+    final int count = (int) readVarLong(buffer);
+
+    final List<Entry> entries = new ArrayList<>(count);
+    byte[] previous = new byte[0];
+    for (int i = 0; i < count; i++) {
+      final int shared = (int) readVarLong(buffer);
+      final int suffix = (int) readVarLong(buffer);
+      final byte[] path = Arrays.copyOf(previous, shared + suffix);
+      buffer.get(path, shared, suffix);
+      final boolean directory = buffer.get() != 0;
+      long size = 0;
+      long modified = 0;
+      byte[] hash = null;
+      if (!directory) {
+        size = readVarLong(buffer);
+        modified = unZigZag(readVarLong(buffer));
+        if (hashes) {
+          hash = new byte[hashLength];
+          buffer.get(hash);
+        }
+      }
+      entries.add(new Entry(new String(path, StandardCharsets.UTF_8), directory, size, modified, hash));
+      previous = path;
+    }
+    return new DirectoryManifest(entries, hashes);
+  }
+
+  private static List<Entry> walk(Path root) throws IOException {
+    final List<Entry> output;
+    try (Stream<FileTree.Entry> tree = FileTree.walk(root, true)) {
+      output = tree.parallel()
+          .filter((FileTree.Entry i) -> !i.getPath().equals(root))
+          .map((FileTree.Entry i) -> {
+            final BasicFileAttributes attrs = i.getAttributes();
+            final String path = DirectoryManifest.toString(root.relativize(i.getPath()));
+            return attrs.isDirectory()
+                ? new Entry(path, true, 0, 0, null)
+                : new Entry(path, false, attrs.size(), attrs.lastModifiedTime().toMillis(), null);
+          })
+          .collect(Collectors.toList());
+    } catch (UncheckedIOException ex) {
+      throw ex.getCause();
+    }
+    output.sort((Entry e1, Entry e2) -> e1.path.compareTo(e2.path));
+    return output;
+  }
+
+  private static byte[] hash(Path file, FileHashCache cache) throws IOException {
+    return cache == null ? FileHashing.hash(file) : cache.hash(file);
+  }
+
+  private static String toString(Path relative) {
+    final StringBuilder strb = new StringBuilder();
+    for (Path name : relative) {
+      if (strb.length() > 0)
+        strb.append('/');
+      strb.append(name);
+    }
+    return strb.toString();
+  }
+
+  private static void writeVarLong(OutputStream out, long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      out.write((int) (value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+
+  private static long readVarLong(ByteBuffer buffer) {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      final byte b = buffer.get();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0)
+        return value;
+    }
+    throw new IllegalArgumentException("Malformed variable length integer.");
+  }
+
+  private static long zigZag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static long unZigZag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /**
+   * A single file or directory in a {@link DirectoryManifest}.
+   */
+  public static final class Entry {
+
+    private final String path;
+    private final boolean directory;
+    private final long size;
+    private final long lastModified;
+    private byte[] hash;
+
+    Entry(String path, boolean directory, long size, long lastModified, byte[] hash) {
+      this.path = path;
+      this.directory = directory;
+      this.size = size;
+      this.lastModified = lastModified;
+      this.hash = hash;
+    }
+
+    /**
+     * Gets the path relative to the root of the tree, using '/' as separator.
+     *
+     * @return The relative path.
+     */
+    public String getPath() {
+      return this.path;
+    }
+
+    /**
+     * Checks if the entry is a directory.
+     *
+     * @return True for a directory, false for a file.
+     */
+    public boolean isDirectory() {
+      return this.directory;
+    }
+
+    /**
+     * Gets the size of the file. Always 0 for a directory.
+     *
+     * @return The size in bytes.
+     */
+    public long getSize() {
+      return this.size;
+    }
+
+    /**
+     * Gets the modified time of the file. Always 0 for a directory.
+     *
+     * @return The modified time in milliseconds since the epoch.
+     */
+    public long getLastModified() {
+      return this.lastModified;
+    }
+
+    /**
+     * Gets the content hash of the file.
+     *
+     * @return The hash, or null for a directory or a snapshot without hashes.
+     */
+    public byte[] getHash() {
+      return this.hash == null ? null : this.hash.clone();
+    }
+
+    Path toPath() {
+      return Paths.get(this.path);
+    }
+
+    @Override
+    public String toString() {
+      return this.path + (this.directory ? "/" : " (" + this.size + " bytes)");
+    }
+  }
+}
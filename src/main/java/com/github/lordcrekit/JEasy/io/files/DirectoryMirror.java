@@ -0,0 +1,254 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.lordcrekit.JEasy.io.files;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps a destination directory a live copy of a source directory. After one
+ * full copy, changes to the source are picked up through a {@link
+ * WatchService} and applied to the destination as they happen.
+ * <p>
+ * Bursts of events are debounced: nothing is applied until the source has
+ * been quiet for the debounce period (or ten debounce periods have passed
+ * since the first event), and every path that changed in the burst is synced
+ * once. If the watch service drops events for a directory, that directory's
+ * subtree is re-scanned.
+ *
+ * @author William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu)
+ */
+public final class DirectoryMirror implements Closeable {
+
+  private static final Logger LOGGER = Logger.getLogger(DirectoryMirror.class.getName());
+
+  private final Path source;
+  private final Path destination;
+  private final SyncOptions options;
+  private final long debounceNanos;
+  private final Map<WatchKey, Path> watched;
+  private final OperationControl control;
+
+  private WatchService watchService;
+  private Thread thread;
+  private volatile boolean closed;
+
+  /**
+   * Constructs a new DirectoryMirror. Nothing happens until {@link #start()}
+   * is called.
+   *
+   * @param source
+   *     The directory to mirror.
+   * @param destination
+   *     The directory to keep up to date.
+   * @param options
+   *     How changes are detected and copied. Extraneous destination entries
+   *     are always deleted, whatever the options say.
+   * @param debounce
+   *     How long the source has to be quiet before changes are applied.
+   * @param unit
+   *     The unit of debounce.
+   */
+  public DirectoryMirror(Path source, Path destination, SyncOptions options, long debounce, TimeUnit unit) {
+    this.source = source;
+    this.destination = destination;
+    this.options = new SyncOptions()
+        .setChangeDetection(options.getChangeDetection())
+        .setCopyOptions(options.getCopyOptions())
+        .setDeleteExtraneous(true);
+    this.debounceNanos = unit.toNanos(debounce);
+    this.watched = new ConcurrentHashMap<>();
+    this.control = OperationControl.blocking();
+  }
+
+  /**
+   * Makes the full copy and starts watching the source. If the destination
+   * does not exist yet it is created with {@link JEasyFiles#copyDirectory(Path,
+   * Path, CopyOptions)}, otherwise it is brought up to date with {@link
+   * JEasyFiles#syncDirectory(Path, Path, SyncOptions)}.
+   *
+   * @return Pointer back to this object.
+   * @throws IOException
+   *     If the full copy failed or the source could not be watched.
+   * @throws IllegalStateException
+   *     If the mirror was already started.
+   */
+  public synchronized DirectoryMirror start() throws IOException {
+    if (this.watchService != null)
+      throw new IllegalStateException("Mirror already started.");
+    this.watchService = this.source.getFileSystem().newWatchService();
+    try {
+      // Watch first, so nothing changed during the copy is missed.
+      register(this.source);
+      if (Files.exists(this.destination, LinkOption.NOFOLLOW_LINKS))
+        JEasyFiles.syncDirectory(this.source, this.destination, this.options);
+      else
+        JEasyFiles.copyDirectory(this.source, this.destination, this.options.getCopyOptions());
+    } catch (IOException | RuntimeException ex) {
+      this.watchService.close();
+      throw ex;
+    }
+
+    this.thread = new Thread(this::run, "JEasyFiles mirror " + this.source);
+    this.thread.setDaemon(true);
+    this.thread.start();
+    return this;
+  }
+
+  /**
+   * Stops watching the source. Changes that were not applied yet are
+   * dropped. A change being applied is interrupted, and once this returns the
+   * mirror does not touch the destination anymore.
+   *
+   * @throws IOException
+   *     If the watch service could not be closed.
+   * @throws InterruptedIOException
+   *     If interrupted while waiting for the mirror to stop.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    this.closed = true;
+    this.control.cancel();
+    if (this.watchService != null)
+      this.watchService.close();
+    if (this.thread != null && this.thread != Thread.currentThread()) {
+      this.thread.interrupt();
+      try {
+        this.thread.join();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while stopping the mirror.");
+      }
+    }
+  }
+
+  private void run() {
+    try {
+      while (!this.closed) {
+        final NavigableSet<Path> dirty = new TreeSet<>();
+        final WatchKey first = this.watchService.take();
+        collect(first, dirty);
+
+        final long deadline = System.nanoTime() + 10 * this.debounceNanos;
+        WatchKey next;
+        while ((next = this.watchService.poll(
+            Math.min(this.debounceNanos, Math.max(0, deadline - System.nanoTime())), TimeUnit.NANOSECONDS)) != null)
+          collect(next, dirty);
+
+        apply(dirty);
+      }
+    } catch (ClosedWatchServiceException | InterruptedException ex) {
+      // Closed.
+    }
+  }
+
+  /**
+   * Adds the paths of every event of a key to the dirty set. On an overflow
+   * the whole watched directory is dirty.
+   */
+  private void collect(WatchKey key, NavigableSet<Path> dirty) {
+    final Path dir = this.watched.get(key);
+    if (dir != null)
+      for (WatchEvent<?> event : key.pollEvents())
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+          dirty.add(dir);
+        else
+          dirty.add(dir.resolve((Path) event.context()));
+    if (!key.reset())
+      this.watched.remove(key);
+  }
+
+  /**
+   * Syncs every dirty path once. Paths inside of another dirty directory are
+   * covered by that directory's sync and skipped. A path that fails is logged
+   * and does not stop the others. Stops as soon as the mirror is closed.
+   */
+  private void apply(NavigableSet<Path> dirty) {
+    Path covering = null;
+    for (Path p : dirty) {
+      if (this.closed)
+        return;
+      if (covering != null && p.startsWith(covering))
+        continue;
+      try {
+        final Path target = JEasyFiles.resolve(this.source, this.destination, p);
+        if (Files.isDirectory(p)) {
+          covering = p;
+          register(p);
+          sync(p, target);
+        } else if (Files.exists(p))
+          sync(p, target);
+        else if (Files.exists(target, LinkOption.NOFOLLOW_LINKS))
+          DirectoryDeleter.delete(target, 1, null, this.control);
+      } catch (ClosedWatchServiceException ex) {
+        throw ex;
+      } catch (IOException | RuntimeException ex) {
+        if (!this.closed)
+          LOGGER.log(Level.WARNING, "Failed to mirror " + p, ex);
+      }
+    }
+  }
+
+  /**
+   * Syncs one path under the mirror's control, so closing the mirror stops
+   * the sync between two files.
+   */
+  private void sync(Path path, Path target) throws IOException {
+    new DirectorySynchronizer(path, target, this.options, this.options.getCopyOptions().getMetrics(),
+        this.control).sync();
+  }
+
+  /**
+   * Watches a directory and every directory below it.
+   */
+  private void register(Path root) throws IOException {
+    Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+        watched.put(dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY), dir);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+}
@@ -0,0 +1,200 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.lordcrekit.JEasy.io.files;
+
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Implementation of {@link JEasyFiles#syncDirectory(Path, Path, SyncOptions)}.
+ *
+ * @author William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu)
+ */
+final class DirectorySynchronizer {
+
+  /**
+   * Temp files are named from this and a random UUID only, so that a file
+   * whose name is close to the length limit can still be synced.
+   */
+  private static final String TEMP_PREFIX = ".jeasy-sync.";
+
+  private final Path source;
+  private final Path destination;
+  private final SyncOptions options;
+  private final FileOperationMetrics metrics;
+  private final OperationControl control;
+
+  DirectorySynchronizer(Path source, Path destination, SyncOptions options, FileOperationMetrics metrics,
+      OperationControl control) {
+
+    this.source = source;
+    this.destination = destination;
+    this.options = options;
+    this.metrics = metrics;
+    this.control = control;
+  }
+
+  /**
+   * Brings the destination up to date with the source.
+   *
+   * @throws IOException
+   *     If the directory structure could not be created or walked, or if any
+   *     file failed to sync.
+   */
+  void sync() throws IOException {
+    final List<Path> files = new ArrayList<>();
+    Files.walkFileTree(this.source, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+            if (control.isCancelled())
+              return FileVisitResult.TERMINATE;
+            final Path target = JEasyFiles.resolve(source, destination, dir);
+            if (Files.exists(target, LinkOption.NOFOLLOW_LINKS)
+                && !Files.isDirectory(target, LinkOption.NOFOLLOW_LINKS))
+              Files.delete(target);
+            Files.createDirectories(target);
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            files.add(file);
+            return FileVisitResult.CONTINUE;
+          }
+        });
+
+    this.control.throwIfCancelled();
+
+    BulkOperation.run(files, this.options.getCopyOptions().getParallelism(), this::syncFile, "Failed to sync",
+        this.metrics, this.control);
+
+    if (this.options.isDeleteExtraneous())
+      deleteExtraneous();
+  }
+
+  /**
+   * Copies a single file if it is missing from the destination or has
+   * changed. The copy is written next to the target and renamed into place, so
+   * the destination never holds a partially copied file.
+   *
+   * @param file
+   *     The file in the source tree.
+   * @return The number of bytes copied.
+   * @throws IOException
+   *     If the file could not be compared or copied.
+   */
+  private long syncFile(Path file) throws IOException {
+    final Path target = JEasyFiles.resolve(this.source, this.destination, file);
+    final BasicFileAttributes sourceAttrs = Files.readAttributes(file, BasicFileAttributes.class);
+    final BasicFileAttributes targetAttrs = readAttributes(target);
+
+    if (targetAttrs != null)
+      if (targetAttrs.isDirectory())
+        JEasyFiles.deleteDirectory(target);
+      else if (isUnchanged(file, sourceAttrs, target, targetAttrs))
+        return 0;
+
+    final Path temp = target.resolveSibling(TEMP_PREFIX + UUID.randomUUID());
+    try {
+      FileCopier.copy(file, temp, sourceAttrs.size(), this.options.getCopyOptions(), this.control);
+      Files.setLastModifiedTime(temp, sourceAttrs.lastModifiedTime());
+      Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+    return sourceAttrs.size();
+  }
+
+  private boolean isUnchanged(Path file, BasicFileAttributes sourceAttrs, Path target,
+      BasicFileAttributes targetAttrs) throws IOException {
+
+    if (sourceAttrs.size() != targetAttrs.size())
+      return false;
+    switch (this.options.getChangeDetection()) {
+      case CONTENT_HASH:
+        return FileHashing.isContentEqual(file, target);
+      case SIZE_AND_MTIME:
+      default:
+        // Compare at millisecond precision, which every file system can store.
+        return sourceAttrs.lastModifiedTime().toMillis() == targetAttrs.lastModifiedTime().toMillis();
+    }
+  }
+
+  /**
+   * Deletes every entry of the destination that does not exist in the source.
+   *
+   * @throws IOException
+   *     If the destination could not be walked or anything failed to delete.
+   */
+  private void deleteExtraneous() throws IOException {
+    final List<Path> extraneous = new ArrayList<>();
+    Files.walkFileTree(this.destination, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+        if (dir.equals(destination) || Files.exists(JEasyFiles.resolve(destination, source, dir)))
+          return FileVisitResult.CONTINUE;
+        extraneous.add(dir);
+        return FileVisitResult.SKIP_SUBTREE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        if (!Files.exists(JEasyFiles.resolve(destination, source, file)))
+          extraneous.add(file);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+
+    this.control.throwIfCancelled();
+
+    BulkOperation.run(extraneous, this.options.getCopyOptions().getParallelism(), (Path p) -> {
+      if (Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS))
+        DirectoryDeleter.delete(p, 1, null, this.control);
+      else
+        Files.delete(p);
+      return 0;
+    }, "Failed to delete", null, this.control);
+  }
+
+  private static BasicFileAttributes readAttributes(Path path) throws IOException {
+    try {
+      return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+    } catch (NoSuchFileException ex) {
+      return null;
+    }
+  }
+}
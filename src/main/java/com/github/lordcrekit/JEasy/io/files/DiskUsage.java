@@ -0,0 +1,97 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.lordcrekit.JEasy.io.files;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The disk usage of a directory tree, as found by {@link
+ * JEasyFiles#getDiskUsage(Path)}. Every subdirectory has a disk usage of its
+ * own, so the tree can be searched for the directories that take the most
+ * space.
+ *
+ * @author William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu)
+ */
+public final class DiskUsage {
+
+  private final Path path;
+  private final long size;
+  private final long fileCount;
+  private final List<DiskUsage> subdirectories;
+
+  DiskUsage(Path path, long size, long fileCount, List<DiskUsage> subdirectories) {
+    this.path = path;
+    this.size = size;
+    this.fileCount = fileCount;
+    final List<DiskUsage> sorted = new ArrayList<>(subdirectories);
+    sorted.sort(Comparator.comparingLong(DiskUsage::getSize).reversed());
+    this.subdirectories = Collections.unmodifiableList(sorted);
+  }
+
+  /**
+   * Gets the directory this is the disk usage of.
+   *
+   * @return The directory.
+   */
+  public Path getPath() {
+    return this.path;
+  }
+
+  /**
+   * Gets the total size of every file in the tree. Symbolic links are counted
+   * with their own size, and are not followed.
+   *
+   * @return The size in bytes.
+   */
+  public long getSize() {
+    return this.size;
+  }
+
+  /**
+   * Gets the number of files in the tree, not counting directories.
+   *
+   * @return The number of files.
+   */
+  public long getFileCount() {
+    return this.fileCount;
+  }
+
+  /**
+   * Gets the disk usage of every direct subdirectory, largest first.
+   *
+   * @return The subdirectories.
+   */
+  public List<DiskUsage> getSubdirectories() {
+    return this.subdirectories;
+  }
+
+  @Override
+  public String toString() {
+    return this.path + " (" + this.size + " bytes, " + this.fileCount + " files)";
+  }
+}
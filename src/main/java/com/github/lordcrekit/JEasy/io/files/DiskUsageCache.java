@@ -0,0 +1,152 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.lordcrekit.JEasy.io.files;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Remembers the contents of directories measured by {@link
+ * JEasyFiles#getDiskUsage(Path, int, DiskUsageCache)}, so that a later
+ * measurement does not have to list directories that have not changed. A
+ * cached directory is used while it has the same modified time, which changes
+ * whenever an entry is added, removed or renamed. Every directory is still
+ * checked, but the files of an unchanged directory are not.
+ * <p>
+ * Since a file growing in place does not change the modified time of its
+ * directory, such a change is not seen until the directory itself changes or
+ * the cache is cleared. When a directory is listed again, every cached
+ * directory below a subdirectory it no longer contains is forgotten. It is
+ * safe to use from several threads at once.
+ *
+ * @author William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu)
+ */
+public final class DiskUsageCache {
+
+  private final NavigableMap<String, Listing> listings;
+
+  /**
+   * Constructs a new, empty DiskUsageCache.
+   */
+  public DiskUsageCache() {
+    this.listings = new ConcurrentSkipListMap<>();
+  }
+
+  /**
+   * Forgets every cached directory.
+   */
+  public void clear() {
+    this.listings.clear();
+  }
+
+  /**
+   * Gets the number of cached directories.
+   *
+   * @return The number of directories.
+   */
+  public int size() {
+    return this.listings.size();
+  }
+
+  /**
+   * Looks up a directory that has not changed since it was cached.
+   *
+   * @param dir
+   *     The directory.
+   * @param modified
+   *     The current modified time of the directory, in nanoseconds.
+   * @return The cached listing, or null if there is none or the directory has
+   *     changed.
+   */
+  Listing get(Path dir, long modified) {
+    final Listing output = this.listings.get(key(dir));
+    return output != null && output.modified == modified ? output : null;
+  }
+
+  /**
+   * Caches the listing of a directory.
+   *
+   * @param dir
+   *     The directory.
+   * @param listing
+   *     What the directory contains.
+   */
+  void put(Path dir, Listing listing) {
+    this.listings.put(key(dir), listing);
+  }
+
+  /**
+   * Forgets every cached directory below the subdirectories a directory
+   * contained when it was cached but does not contain anymore.
+   *
+   * @param dir
+   *     The directory.
+   * @param subdirectories
+   *     The subdirectories the directory contains now.
+   */
+  void evictRemoved(Path dir, List<String> subdirectories) {
+    final Listing previous = this.listings.get(key(dir));
+    if (previous == null)
+      return;
+    final Set<String> current = new HashSet<>(subdirectories);
+    for (String name : previous.subdirectories)
+      if (!current.contains(name)) {
+        final String removed = key(dir.resolve(name));
+        final String prefix = removed + dir.getFileSystem().getSeparator();
+        this.listings.remove(removed);
+        for (Map.Entry<String, Listing> i : this.listings.tailMap(prefix).entrySet()) {
+          if (!i.getKey().startsWith(prefix))
+            break;
+          this.listings.remove(i.getKey());
+        }
+      }
+  }
+
+  private static String key(Path dir) {
+    return dir.toAbsolutePath().normalize().toString();
+  }
+
+  /**
+   * The direct contents of a directory.
+   */
+  static final class Listing {
+
+    final long modified;
+    final long fileCount;
+    final long size;
+    final List<String> subdirectories;
+
+    Listing(long modified, long fileCount, long size, List<String> subdirectories) {
+      this.modified = modified;
+      this.fileCount = fileCount;
+      this.size = size;
+      this.subdirectories = subdirectories;
+    }
+  }
+}
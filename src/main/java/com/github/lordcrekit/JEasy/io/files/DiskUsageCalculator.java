@@ -0,0 +1,144 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.lordcrekit.JEasy.io.files;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Implementation of {@link JEasyFiles#getDiskUsage(Path, int,
+ * DiskUsageCache)}.
+ *
+ * @author William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu)
+ */
+final class DiskUsageCalculator {
+
+  /**
+   * Directories modified this recently are not cached, since another change
+   * within the same clock tick would not change their modified time.
+   */
+  private static final long RACY_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+  private DiskUsageCalculator() {
+  }
+
+  /**
+   * Measures a tree one level at a time, listing the directories of each level
+   * in parallel, then adds the sizes up from the deepest level.
+   *
+   * @param root
+   *     The directory to measure.
+   * @param parallelism
+   *     The maximum number of directories listed at the same time.
+   * @param cache
+   *     The cache of directory listings, or null to list every directory.
+   * @return The disk usage of the tree.
+   * @throws IOException
+   *     If any directory could not be listed.
+   */
+  static DiskUsage calculate(Path root, int parallelism, DiskUsageCache cache) throws IOException {
+    final long racy = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) - RACY_NANOS;
+    final Map<Path, DiskUsageCache.Listing> listings = new ConcurrentHashMap<>();
+    final List<List<Path>> levels = new ArrayList<>();
+
+    List<Path> level = Collections.singletonList(root);
+    while (!level.isEmpty()) {
+      levels.add(level);
+      final Queue<Path> next = new ConcurrentLinkedQueue<>();
+      BulkOperation.run(level, parallelism, (Path dir) -> {
+        final DiskUsageCache.Listing listing = list(dir, cache, racy);
+        listings.put(dir, listing);
+        for (String i : listing.subdirectories)
+          next.add(dir.resolve(i));
+      }, "Failed to measure");
+      level = new ArrayList<>(next);
+    }
+
+    final Map<Path, DiskUsage> usages = new HashMap<>();
+    for (int i = levels.size() - 1; i >= 0; i--)
+      for (Path dir : levels.get(i)) {
+        final DiskUsageCache.Listing listing = listings.get(dir);
+        final List<DiskUsage> subdirectories = new ArrayList<>(listing.subdirectories.size());
+        long size = listing.size;
+        long fileCount = listing.fileCount;
+        for (String name : listing.subdirectories) {
+          final DiskUsage subdirectory = usages.remove(dir.resolve(name));
+          subdirectories.add(subdirectory);
+          size += subdirectory.getSize();
+          fileCount += subdirectory.getFileCount();
+        }
+        usages.put(dir, new DiskUsage(dir, size, fileCount, subdirectories));
+      }
+    return usages.get(root);
+  }
+
+  /**
+   * Lists the direct contents of a directory, or takes them from the cache if
+   * the directory has not changed.
+   */
+  private static DiskUsageCache.Listing list(Path dir, DiskUsageCache cache, long racy) throws IOException {
+    final long modified = Files.getLastModifiedTime(dir, LinkOption.NOFOLLOW_LINKS).to(TimeUnit.NANOSECONDS);
+    if (cache != null) {
+      final DiskUsageCache.Listing cached = cache.get(dir, modified);
+      if (cached != null)
+        return cached;
+    }
+
+    long fileCount = 0;
+    long size = 0;
+    final List<String> subdirectories = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+      for (Path i : stream) {
+        final BasicFileAttributes attrs = Files.readAttributes(i, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (attrs.isDirectory()) {
+          subdirectories.add(i.getFileName().toString());
+        } else {
+          fileCount++;
+          size += attrs.size();
+        }
+      }
+    }
+
+    final DiskUsageCache.Listing output = new DiskUsageCache.Listing(modified, fileCount, size, subdirectories);
+    if (cache != null) {
+      cache.evictRemoved(dir, subdirectories);
+      if (modified < racy)
+        cache.put(dir, output);
+    }
+    return output;
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.lordcrekit.JEasy.io.files;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copies single files as configured by {@link CopyOptions}. Files of at least
+ * the large file threshold are split into ranges that are copied by several
+ * threads at once with positional reads and writes, so that one large file is
+ * not limited to the throughput of a single thread.
+ *
+ * @author William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu)
+ */
+final class FileCopier {
+
+  /**
+   * Size of the buffer each thread copies its range through.
+   */
+  private static final int BUFFER_SIZE = 1024 * 1024;
+
+  private FileCopier() {
+  }
+
+  /**
+   * Copies a file. Strategies that link or clone files are tried first even
+   * for large files, since they do not move any bytes at all; the chunked
+   * copy replaces {@link CopyStrategies#STREAM} and {@link
+   * CopyStrategies#TRANSFER_TO}, and is the fallback of any strategy that
+   * declines a large file.
+   *
+   * @param source
+   *     The file to copy.
+   * @param target
+   *     Where the copy should be created. Must not exist.
+   * @param size
+   *     The size of the source file.
+   * @param options
+   *     How the file should be copied.
+   * @param control
+   *     Where range helpers run and whether the copy was cancelled.
+   * @throws IOException
+   *     If copying failed.
+   */
+  static void copy(Path source, Path target, long size, CopyOptions options, OperationControl control)
+      throws IOException {
+
+    final CopyStrategy strategy = options.getStrategy();
+    if (size < options.getLargeFileThreshold() || options.getParallelism() == 1)
+      CopyStrategies.copy(strategy, source, target);
+    else if (strategy == CopyStrategies.STREAM || strategy == CopyStrategies.TRANSFER_TO
+        || !strategy.copy(source, target))
+      copyRanges(source, target, size, options, control);
+  }
+
+  /**
+   * Copies a file in ranges of the chunk size of the options, using up to the
+   * parallelism of the options threads. A partially written target is deleted
+   * if any range fails.
+   */
+  private static void copyRanges(Path source, Path target, long size, CopyOptions options,
+      OperationControl control) throws IOException {
+
+    final long chunkSize = options.getChunkSize();
+    final List<Long> ranges = new ArrayList<>();
+    for (long position = 0; position < size; position += chunkSize)
+      ranges.add(position);
+
+    boolean created = false;
+    boolean copied = false;
+    try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+         FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+      created = true;
+      // Sets the final length up front so ranges can be written in any order.
+      out.write(ByteBuffer.wrap(new byte[1]), size - 1);
+      try {
+        BulkOperation.run(ranges, options.getParallelism(), (Long position) -> copyRange(in, out, position,
+            Math.min(position + chunkSize, size), source), "Failed to copy " + source, control);
+      } catch (IOException ex) {
+        // The failure of a range is more useful than the aggregate of them.
+        throw ex.getSuppressed().length > 0 ? (IOException) ex.getSuppressed()[0] : ex;
+      }
+      copied = true;
+    } finally {
+      if (created && !copied)
+        Files.deleteIfExists(target);
+    }
+  }
+
+  /**
+   * Copies one range of a file between the same positions of two channels.
+   */
+  private static void copyRange(FileChannel in, FileChannel out, long start, long end, Path source)
+      throws IOException {
+
+    final ByteBuffer buffer = ByteBuffer.allocateDirect((int) Math.min(BUFFER_SIZE, end - start));
+    long read = start;
+    while (read < end) {
+      buffer.clear().limit((int) Math.min(buffer.capacity(), end - read));
+      final int n = in.read(buffer, read);
+      if (n < 0)
+        throw new IOException("File shrank while being copied: " + source);
+      buffer.flip();
+      long written = read;
+      while (buffer.hasRemaining())
+        written += out.write(buffer, written);
+      read += n;
+    }
+  }
+}
+
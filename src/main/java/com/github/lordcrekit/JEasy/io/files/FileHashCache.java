@@ -0,0 +1,211 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.lordcrekit.JEasy.io.files;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the content hash of files so that unchanged files do not have to
+ * be read again. A cached hash is only used while the file still has the same
+ * path, size, modified time and file key (the inode on unix systems). Files
+ * modified in the two seconds before they were hashed are not cached, since
+ * another change within the same clock tick would not change their modified
+ * time.
+ * <p>
+ * The cache can be saved to disk and loaded again by a later run. It is safe
+ * to use from several threads at once.
+ *
+ * @author William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu)
+ */
+public final class FileHashCache {
+
+  private static final int MAGIC = 0x4A454843; // "JEHC"
+  private static final int VERSION = 1;
+
+  /**
+   * Files modified this recently before they are hashed are not cached.
+   */
+  private static final long RACY_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+  private final Map<String, Entry> entries;
+
+  /**
+   * Constructs a new, empty FileHashCache.
+   */
+  public FileHashCache() {
+    this.entries = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Loads a cache previously written by {@link #save(Path)}. A missing file
+   * gives an empty cache.
+   *
+   * @param path
+   *     The file to load from.
+   * @return The loaded cache.
+   * @throws IOException
+   *     If the file exists but could not be read or is not a hash cache.
+   */
+  public static FileHashCache load(Path path) throws IOException {
+    final FileHashCache output = new FileHashCache();
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION)
+        throw new IOException("Not a hash cache: " + path);
+      final int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        final String file = in.readUTF();
+        final long size = in.readLong();
+        final long modified = in.readLong();
+        final String fileKey = in.readBoolean() ? in.readUTF() : null;
+        final byte[] hash = new byte[in.readUnsignedByte()];
+        in.readFully(hash);
+        output.entries.put(file, new Entry(size, modified, fileKey, hash));
+      }
+    } catch (NoSuchFileException ex) {
+      // Nothing has been cached yet.
+    }
+    return output;
+  }
+
+  /**
+   * Saves the cache so it can be loaded by a later run. The file is replaced
+   * atomically.
+   *
+   * @param path
+   *     The file to save to.
+   * @return Pointer back to this object.
+   * @throws IOException
+   *     If the file could not be written.
+   */
+  public FileHashCache save(Path path) throws IOException {
+    final Path temp = path.resolveSibling("." + path.getFileName() + "." + UUID.randomUUID() + ".tmp");
+    final Map<String, Entry> snapshot = new HashMap<>(this.entries);
+    try {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp, StandardOpenOption.CREATE_NEW)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(snapshot.size());
+        for (Map.Entry<String, Entry> i : snapshot.entrySet()) {
+          final Entry e = i.getValue();
+          out.writeUTF(i.getKey());
+          out.writeLong(e.size);
+          out.writeLong(e.modified);
+          out.writeBoolean(e.fileKey != null);
+          if (e.fileKey != null)
+            out.writeUTF(e.fileKey);
+          out.writeByte(e.hash.length);
+          out.write(e.hash);
+        }
+      }
+      Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+    return this;
+  }
+
+  /**
+   * Gets the content hash of a file, reading the file only if it is not
+   * cached or has changed since it was cached.
+   *
+   * @param file
+   *     The file to hash.
+   * @return The content hash.
+   * @throws IOException
+   *     If the file could not be read.
+   */
+  public byte[] hash(Path file) throws IOException {
+    return hash(file, Files.readAttributes(file, BasicFileAttributes.class));
+  }
+
+  /**
+   * Gets the content hash of a file whose attributes were already read.
+   *
+   * @param file
+   *     The file to hash.
+   * @param attrs
+   *     The current attributes of the file.
+   * @return The content hash.
+   * @throws IOException
+   *     If the file could not be read.
+   */
+  byte[] hash(Path file, BasicFileAttributes attrs) throws IOException {
+    final String key = file.toAbsolutePath().normalize().toString();
+    final long modified = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+    final String fileKey = attrs.fileKey() == null ? null : attrs.fileKey().toString();
+
+    final Entry cached = this.entries.get(key);
+    if (cached != null && cached.size == attrs.size() && cached.modified == modified
+        && Objects.equals(cached.fileKey, fileKey))
+      return cached.hash.clone();
+
+    final long hashed = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    final byte[] hash = FileHashing.hash(file, attrs.size());
+    if (modified < hashed - RACY_NANOS)
+      this.entries.put(key, new Entry(attrs.size(), modified, fileKey, hash));
+    else
+      this.entries.remove(key);
+    return hash.clone();
+  }
+
+  /**
+   * Gets the number of cached files.
+   *
+   * @return The number of cached files.
+   */
+  public int size() {
+    return this.entries.size();
+  }
+
+  private static final class Entry {
+
+    final long size;
+    final long modified;
+    final String fileKey;
+    final byte[] hash;
+
+    Entry(long size, long modified, String fileKey, byte[] hash) {
+      this.size = size;
+      this.modified = modified;
+      this.fileKey = fileKey;
+      this.hash = hash;
+    }
+  }
+}
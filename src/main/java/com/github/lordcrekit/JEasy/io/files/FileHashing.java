@@ -0,0 +1,120 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.lordcrekit.JEasy.io.files;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Content hashing for file comparisons.
+ *
+ * @author William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu)
+ */
+final class FileHashing {
+
+  static final String ALGORITHM = "SHA-256";
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final long MAPPED_THRESHOLD = 4L * 1024 * 1024;
+  private static final long MAPPED_CHUNK_SIZE = 256L * 1024 * 1024;
+
+  private FileHashing() {
+  }
+
+  /**
+   * Hashes the contents of a file.
+   *
+   * @param file
+   *     The file to hash.
+   * @return The digest of the file contents.
+   * @throws IOException
+   *     If the file could not be read.
+   */
+  static byte[] hash(Path file) throws IOException {
+    return hash(file, Files.size(file));
+  }
+
+  /**
+   * Hashes the contents of a file of known size. Large files are read through
+   * a memory map instead of being copied into a buffer.
+   *
+   * @param file
+   *     The file to hash.
+   * @param size
+   *     The size of the file.
+   * @return The digest of the file contents.
+   * @throws IOException
+   *     If the file could not be read.
+   */
+  static byte[] hash(Path file, long size) throws IOException {
+    final MessageDigest digest = newDigest();
+    if (size >= MAPPED_THRESHOLD)
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+        final long length = channel.size();
+        for (long position = 0; position < length; position += MAPPED_CHUNK_SIZE)
+          digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position,
+              Math.min(MAPPED_CHUNK_SIZE, length - position)));
+      }
+    else {
+      final byte[] buffer = new byte[BUFFER_SIZE];
+      try (InputStream in = Files.newInputStream(file)) {
+        int read;
+        while ((read = in.read(buffer)) != -1)
+          digest.update(buffer, 0, read);
+      }
+    }
+    return digest.digest();
+  }
+
+  /**
+   * Checks if two files have identical contents by hashing them.
+   *
+   * @param file1
+   *     The first file.
+   * @param file2
+   *     The second file.
+   * @return True if both files hash to the same value.
+   * @throws IOException
+   *     If either file could not be read.
+   */
+  static boolean isContentEqual(Path file1, Path file2) throws IOException {
+    return Arrays.equals(hash(file1), hash(file2));
+  }
+
+  static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance(ALGORITHM);
+    } catch (NoSuchAlgorithmException ex) {
+      // Every java platform is required to support SHA-256.
+      throw new IllegalStateException(ex);
+    }
+  }
+}
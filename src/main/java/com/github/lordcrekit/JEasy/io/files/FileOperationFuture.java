@@ -0,0 +1,111 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.lordcrekit.JEasy.io.files;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * The result of an asynchronous {@link JEasyFiles} operation. Cancelling it
+ * stops the operation from starting any more file operations; the files
+ * already being processed are finished in the background. What was done
+ * before the cancel (or failure, or completion) can be read from {@link
+ * #getMetrics()}.
+ *
+ * @author William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu)
+ */
+public final class FileOperationFuture extends CompletableFuture<Void> {
+
+  /**
+   * The body of an asynchronous operation.
+   */
+  interface Body {
+
+    void run(OperationControl control) throws IOException;
+  }
+
+  private final OperationControl control;
+  private final FileOperationMetrics metrics;
+
+  private FileOperationFuture(OperationControl control, FileOperationMetrics metrics) {
+    this.control = control;
+    this.metrics = metrics;
+  }
+
+  /**
+   * Starts an operation on the executor. The operation runs its own share of
+   * the work on the thread it was started on, so it makes progress even on an
+   * executor with a single thread.
+   *
+   * @param executor
+   *     The executor to run the operation on.
+   * @param metrics
+   *     Where the operation records its progress.
+   * @param body
+   *     The operation.
+   * @return The future of the operation.
+   */
+  static FileOperationFuture start(Executor executor, FileOperationMetrics metrics, Body body) {
+    final FileOperationFuture future = new FileOperationFuture(new OperationControl(executor), metrics);
+    executor.execute(() -> {
+      try {
+        future.control.throwIfCancelled();
+        body.run(future.control);
+        future.complete(null);
+      } catch (CancellationException ex) {
+        future.cancel(false);
+      } catch (Throwable ex) {
+        // Errors too, so that nobody waits forever on the future.
+        future.completeExceptionally(ex);
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Gets the progress of the operation: how many files and bytes it has
+   * processed so far and how many failed.
+   *
+   * @return The metrics of the operation.
+   */
+  public FileOperationMetrics getMetrics() {
+    return this.metrics;
+  }
+
+  /**
+   * Cancels the operation. No new file operations are started after this
+   * returns.
+   *
+   * @param mayInterruptIfRunning
+   *     Ignored; file operations in progress are always allowed to finish.
+   * @return True if the future is now cancelled.
+   */
+  @Override
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    this.control.cancel();
+    return super.cancel(mayInterruptIfRunning);
+  }
+}
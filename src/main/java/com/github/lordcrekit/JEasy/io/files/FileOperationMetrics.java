@@ -0,0 +1,312 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.lordcrekit.JEasy.io.files;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects progress, throughput and latency of a bulk file operation. Pass it
+ * to an operation (for example with {@link CopyOptions#setMetrics}) and read
+ * it from any thread while the operation runs, or have it report to a {@link
+ * ProgressListener}. The clock starts when the first operation using the
+ * metrics starts, not when they are created.
+ * <p>
+ * Recording a file does not allocate: counters are {@link LongAdder}s, the
+ * latency histogram has one fixed bucket per power of two nanoseconds, and the
+ * slowest files are only tracked under a lock when a file is slower than every
+ * file already tracked.
+ *
+ * @author William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu)
+ */
+public final class FileOperationMetrics {
+
+  private static final int SLOWEST_TRACKED = 10;
+  private static final long NOT_STARTED = Long.MIN_VALUE;
+
+  private final AtomicLong startNanos;
+  private final LongAdder files;
+  private final LongAdder bytes;
+  private final LongAdder failures;
+  private final AtomicLongArray latencyBuckets;
+
+  private final Path[] slowestPaths;
+  private final long[] slowestNanos;
+  private volatile long slowestThreshold;
+
+  private final ProgressListener listener;
+  private final long reportIntervalNanos;
+  private final AtomicLong nextReport;
+
+  /**
+   * Constructs a new FileOperationMetrics that is only read on demand.
+   */
+  public FileOperationMetrics() {
+    this(null, 0, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Constructs a new FileOperationMetrics that reports to a listener.
+   *
+   * @param listener
+   *     The listener to report to, or null for none.
+   * @param reportInterval
+   *     The minimum time between two reports.
+   * @param unit
+   *     The unit of reportInterval.
+   */
+  public FileOperationMetrics(ProgressListener listener, long reportInterval, TimeUnit unit) {
+    this.startNanos = new AtomicLong(NOT_STARTED);
+    this.files = new LongAdder();
+    this.bytes = new LongAdder();
+    this.failures = new LongAdder();
+    this.latencyBuckets = new AtomicLongArray(64);
+    this.slowestPaths = new Path[SLOWEST_TRACKED];
+    this.slowestNanos = new long[SLOWEST_TRACKED];
+    this.slowestThreshold = -1;
+    this.listener = listener;
+    this.reportIntervalNanos = unit.toNanos(reportInterval);
+    this.nextReport = new AtomicLong(System.nanoTime() + this.reportIntervalNanos);
+  }
+
+  /**
+   * Starts the clock, unless it was started already.
+   */
+  void start() {
+    if (this.startNanos.get() != NOT_STARTED)
+      return;
+    final long now = System.nanoTime();
+    if (this.startNanos.compareAndSet(NOT_STARTED, now))
+      this.nextReport.set(now + this.reportIntervalNanos);
+  }
+
+  /**
+   * Records one processed file.
+   *
+   * @param path
+   *     The file.
+   * @param bytes
+   *     The number of bytes processed for it.
+   * @param nanos
+   *     How long processing it took.
+   */
+  void record(Path path, long bytes, long nanos) {
+    start();
+    this.files.increment();
+    this.bytes.add(bytes);
+    this.latencyBuckets.incrementAndGet(64 - Long.numberOfLeadingZeros(nanos) - (nanos == 0 ? 0 : 1));
+    if (nanos > this.slowestThreshold)
+      trackSlow(path, nanos);
+    report();
+  }
+
+  /**
+   * Records one file that failed to process.
+   */
+  void recordFailure() {
+    start();
+    this.failures.increment();
+    report();
+  }
+
+  /**
+   * Gets the number of files processed so far.
+   *
+   * @return The number of files.
+   */
+  public long getFiles() {
+    return this.files.sum();
+  }
+
+  /**
+   * Gets the number of bytes processed so far. Operations that do not move
+   * file contents, such as deletes, report no bytes.
+   *
+   * @return The number of bytes.
+   */
+  public long getBytes() {
+    return this.bytes.sum();
+  }
+
+  /**
+   * Gets the number of files that failed to process.
+   *
+   * @return The number of failures.
+   */
+  public long getFailures() {
+    return this.failures.sum();
+  }
+
+  /**
+   * Gets the time since the first operation using these metrics started.
+   *
+   * @param unit
+   *     The unit to return the time in.
+   * @return The elapsed time, or 0 if no operation has started.
+   */
+  public long getElapsed(TimeUnit unit) {
+    return unit.convert(elapsedNanos(), TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Gets the average number of files processed per second.
+   *
+   * @return The file throughput.
+   */
+  public double getFilesPerSecond() {
+    return perSecond(getFiles());
+  }
+
+  /**
+   * Gets the average number of bytes processed per second.
+   *
+   * @return The byte throughput.
+   */
+  public double getBytesPerSecond() {
+    return perSecond(getBytes());
+  }
+
+  /**
+   * Gets the per-file latency histogram. Bucket i counts the files that took
+   * at least 2<sup>i</sup> and less than 2<sup>i+1</sup> nanoseconds (bucket 0
+   * also counts files that took no measurable time).
+   *
+   * @return A copy of the 64 histogram buckets.
+   */
+  public long[] getLatencyHistogram() {
+    final long[] output = new long[this.latencyBuckets.length()];
+    for (int i = 0; i < output.length; i++)
+      output[i] = this.latencyBuckets.get(i);
+    return output;
+  }
+
+  /**
+   * Estimates a per-file latency percentile from the histogram. The estimate
+   * is the upper bound of the bucket the percentile falls in, so it is at most
+   * twice the real value.
+   *
+   * @param percentile
+   *     The percentile, between 0 and 100.
+   * @param unit
+   *     The unit to return the latency in.
+   * @return The estimated latency, or 0 if nothing was recorded.
+   */
+  public long getLatencyPercentile(double percentile, TimeUnit unit) {
+    final long[] histogram = getLatencyHistogram();
+    long total = 0;
+    for (long i : histogram)
+      total += i;
+    if (total == 0)
+      return 0;
+
+    final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+    long seen = 0;
+    for (int i = 0; i < histogram.length; i++) {
+      seen += histogram[i];
+      if (seen >= rank)
+        return unit.convert(i >= 62 ? Long.MAX_VALUE : (2L << i) - 1, TimeUnit.NANOSECONDS);
+    }
+    return unit.convert(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Gets the slowest files processed so far, slowest first.
+   *
+   * @return The files mapped to how many nanoseconds they took.
+   */
+  public synchronized Map<Path, Long> getSlowestFiles() {
+    final Map<Path, Long> output = new LinkedHashMap<>();
+    final boolean[] taken = new boolean[SLOWEST_TRACKED];
+    for (int n = 0; n < SLOWEST_TRACKED; n++) {
+      int max = -1;
+      for (int i = 0; i < SLOWEST_TRACKED; i++)
+        if (!taken[i] && this.slowestPaths[i] != null && (max == -1 || this.slowestNanos[i] > this.slowestNanos[max]))
+          max = i;
+      if (max == -1)
+        break;
+      taken[max] = true;
+      output.put(this.slowestPaths[max], this.slowestNanos[max]);
+    }
+    return output;
+  }
+
+  @Override
+  public String toString() {
+    return "{files=" + getFiles() + ", bytes=" + getBytes() + ", failures=" + getFailures()
+        + ", elapsed=" + getElapsed(TimeUnit.MILLISECONDS) + "ms"
+        + ", files/s=" + (long) getFilesPerSecond() + ", bytes/s=" + (long) getBytesPerSecond()
+        + ", p50=" + getLatencyPercentile(50, TimeUnit.MICROSECONDS) + "us"
+        + ", p99=" + getLatencyPercentile(99, TimeUnit.MICROSECONDS) + "us}";
+  }
+
+  private synchronized void trackSlow(Path path, long nanos) {
+    int min = 0;
+    for (int i = 0; i < SLOWEST_TRACKED; i++) {
+      if (this.slowestPaths[i] == null) {
+        min = i;
+        break;
+      }
+      if (this.slowestNanos[i] < this.slowestNanos[min])
+        min = i;
+    }
+    if (this.slowestPaths[min] != null && this.slowestNanos[min] >= nanos)
+      return;
+    this.slowestPaths[min] = path;
+    this.slowestNanos[min] = nanos;
+
+    long threshold = Long.MAX_VALUE;
+    for (int i = 0; i < SLOWEST_TRACKED; i++) {
+      if (this.slowestPaths[i] == null) {
+        threshold = -1;
+        break;
+      }
+      threshold = Math.min(threshold, this.slowestNanos[i]);
+    }
+    this.slowestThreshold = threshold;
+  }
+
+  private void report() {
+    if (this.listener == null)
+      return;
+    final long now = System.nanoTime();
+    final long next = this.nextReport.get();
+    if (now - next >= 0 && this.nextReport.compareAndSet(next, now + this.reportIntervalNanos))
+      this.listener.progress(this);
+  }
+
+  private long elapsedNanos() {
+    final long start = this.startNanos.get();
+    return start == NOT_STARTED ? 0 : System.nanoTime() - start;
+  }
+
+  private double perSecond(long count) {
+    final long elapsed = elapsedNanos();
+    return elapsed <= 0 ? 0 : count * 1e9 / elapsed;
+  }
+}
@@ -0,0 +1,247 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.lordcrekit.JEasy.io.files;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A source of every entry in a directory tree, with the attributes of each
+ * entry read while its directory is listed, so that no entry has to be
+ * stat'ed again by whoever consumes it.
+ * <p>
+ * The tree is walked by a {@link Spliterator} that splits off whole
+ * directories that have not been listed yet, so a {@link Stream#parallel()
+ * parallel} stream spreads the listing itself over several threads. Entries
+ * are produced in no particular order. Every directory is listed in full and
+ * closed before its entries are produced, so the stream never holds a
+ * directory open and does not need to be closed.
+ * <p>
+ * A failure to read a directory or an entry is thrown as an {@link
+ * UncheckedIOException} from the terminal operation of the stream.
+ *
+ * @author William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu)
+ */
+public final class FileTree {
+
+  private FileTree() {
+  }
+
+  /**
+   * Streams every entry of a tree, including the root itself. Symbolic links
+   * are not followed.
+   *
+   * @param root
+   *     The root of the tree.
+   * @return The entries of the tree.
+   * @throws IOException
+   *     If the root could not be read.
+   */
+  public static Stream<Entry> walk(Path root) throws IOException {
+    return walk(root, false);
+  }
+
+  /**
+   * Streams every entry of a tree, including the root itself.
+   *
+   * @param root
+   *     The root of the tree.
+   * @param followLinks
+   *     True to report symbolic links as what they point to, and to walk into
+   *     linked directories. A link that points back into its own ancestors
+   *     fails with a {@link FileSystemLoopException}, and a broken link is
+   *     reported as the link itself.
+   * @return The entries of the tree.
+   * @throws IOException
+   *     If the root could not be read.
+   */
+  public static Stream<Entry> walk(Path root, boolean followLinks) throws IOException {
+    return StreamSupport.stream(spliterator(root, followLinks), false);
+  }
+
+  /**
+   * Creates a spliterator over every entry of a tree, including the root
+   * itself.
+   *
+   * @param root
+   *     The root of the tree.
+   * @param followLinks
+   *     True to report symbolic links as what they point to, and to walk into
+   *     linked directories.
+   * @return The spliterator.
+   * @throws IOException
+   *     If the root could not be read.
+   * @see #walk(Path, boolean)
+   */
+  public static Spliterator<Entry> spliterator(Path root, boolean followLinks) throws IOException {
+    final Entry entry = new Entry(root, readAttributes(root, followLinks), null);
+    final TreeSpliterator output = new TreeSpliterator(followLinks);
+    output.ready.add(entry);
+    if (entry.attributes.isDirectory())
+      output.unlisted.add(entry);
+    return output;
+  }
+
+  private static BasicFileAttributes readAttributes(Path path, boolean followLinks) throws IOException {
+    if (followLinks)
+      try {
+        return Files.readAttributes(path, BasicFileAttributes.class);
+      } catch (IOException ex) {
+        // Falls back to the link itself, as Files.walkFileTree does.
+      }
+    return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+  }
+
+  /**
+   * An entry of a tree, and its attributes as they were when its directory was
+   * listed.
+   */
+  public static final class Entry {
+
+    private final Path path;
+    private final BasicFileAttributes attributes;
+    private final Entry parent;
+
+    Entry(Path path, BasicFileAttributes attributes, Entry parent) {
+      this.path = path;
+      this.attributes = attributes;
+      this.parent = parent;
+    }
+
+    /**
+     * Gets the path of the entry, which starts with the root of the tree.
+     *
+     * @return The path.
+     */
+    public Path getPath() {
+      return this.path;
+    }
+
+    /**
+     * Gets the attributes of the entry.
+     *
+     * @return The attributes.
+     */
+    public BasicFileAttributes getAttributes() {
+      return this.attributes;
+    }
+
+    @Override
+    public String toString() {
+      return this.path.toString();
+    }
+  }
+
+  /**
+   * Walks a tree by listing one directory at a time. Splitting hands half of
+   * the directories that are still to be listed to the new spliterator, or,
+   * if there are none, half of the entries that are ready.
+   */
+  private static final class TreeSpliterator implements Spliterator<Entry> {
+
+    private final boolean followLinks;
+    private final Deque<Entry> unlisted;
+    private final Deque<Entry> ready;
+
+    TreeSpliterator(boolean followLinks) {
+      this.followLinks = followLinks;
+      this.unlisted = new ArrayDeque<>();
+      this.ready = new ArrayDeque<>();
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Entry> action) {
+      while (this.ready.isEmpty()) {
+        if (this.unlisted.isEmpty())
+          return false;
+        list(this.unlisted.poll());
+      }
+      action.accept(this.ready.poll());
+      return true;
+    }
+
+    @Override
+    public Spliterator<Entry> trySplit() {
+      if (this.unlisted.size() == 1)
+        list(this.unlisted.poll());
+
+      final TreeSpliterator output = new TreeSpliterator(this.followLinks);
+      if (this.unlisted.size() > 1)
+        for (int i = this.unlisted.size() / 2; i > 0; i--)
+          output.unlisted.add(this.unlisted.pollLast());
+      else if (this.ready.size() > 1)
+        for (int i = this.ready.size() / 2; i > 0; i--)
+          output.ready.add(this.ready.pollLast());
+      else
+        return null;
+      return output;
+    }
+
+    @Override
+    public long estimateSize() {
+      return this.unlisted.isEmpty() ? this.ready.size() : Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+      return DISTINCT | NONNULL;
+    }
+
+    private void list(Entry dir) {
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir.path)) {
+        for (Path i : stream) {
+          final Entry entry = new Entry(i, readAttributes(i, this.followLinks), dir);
+          this.ready.add(entry);
+          if (entry.attributes.isDirectory()) {
+            if (this.followLinks)
+              checkForLoop(entry);
+            this.unlisted.add(entry);
+          }
+        }
+      } catch (IOException ex) {
+        throw new UncheckedIOException(ex);
+      }
+    }
+
+    private static void checkForLoop(Entry dir) throws IOException {
+      final Object key = dir.attributes.fileKey();
+      for (Entry i = dir.parent; i != null; i = i.parent)
+        if (key != null ? Objects.equals(key, i.attributes.fileKey()) : Files.isSameFile(dir.path, i.path))
+          throw new FileSystemLoopException(dir.path.toString());
+    }
+  }
+}
@@ -25,13 +25,20 @@ package com.github.lordcrekit.JEasy.io.files;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Additional methods for dealing with files and file structures.
@@ -75,7 +82,187 @@ public class JEasyFiles {
    *     If something goes wrong trying to copy the files.
    */
   public static void copyDirectory(Path source, Path destination) throws IOException {
-    copyDirectory(source.toFile(), destination.toFile());
+    copyDirectory(source, destination, new CopyOptions());
+  }
+
+  /**
+   * Copies the given directory to the desired destination. Every directory is
+   * created first, then the files are copied in parallel as configured by the
+   * options. A failure to copy one file does not stop the others from being
+   * copied.
+   *
+   * @param source
+   *     The directory to copy.
+   * @param destination
+   *     The destination to copy the directory to.
+   * @param options
+   *     How the copy should be performed.
+   * @throws IOException
+   *     If the directory structure could not be created, or if any file failed
+   *     to copy. In the latter case every failure is attached as a suppressed
+   *     exception.
+   */
+  public static void copyDirectory(Path source, Path destination, CopyOptions options) throws IOException {
+    DirectoryCopier.copy(source, destination, options, options.getMetrics(), OperationControl.blocking());
+  }
+
+  /**
+   * Copies a single file as configured by the options. A file of at least the
+   * large file threshold of the options is split into ranges that are copied
+   * by several threads at once.
+   *
+   * @param source
+   *     The file to copy.
+   * @param target
+   *     Where the copy should be created. Must not exist.
+   * @param options
+   *     How the copy should be performed.
+   * @throws IOException
+   *     If the file could not be copied.
+   * @see CopyOptions#setLargeFileThreshold(long)
+   */
+  public static void copyFile(Path source, Path target, CopyOptions options) throws IOException {
+    final FileOperationMetrics metrics = options.getMetrics();
+    if (metrics != null)
+      metrics.start();
+    final long start = System.nanoTime();
+    try {
+      final long size = Files.size(source);
+      FileCopier.copy(source, target, size, options, OperationControl.blocking());
+      if (metrics != null)
+        metrics.record(source, size, System.nanoTime() - start);
+    } catch (IOException ex) {
+      if (metrics != null)
+        metrics.recordFailure();
+      throw ex;
+    }
+  }
+
+  /**
+   * Copies the given directory to the desired destination without blocking
+   * the calling thread. The copy runs on the executor, using up to the
+   * parallelism of the options threads from it.
+   *
+   * @param source
+   *     The directory to copy.
+   * @param destination
+   *     The destination to copy the directory to.
+   * @param options
+   *     How the copy should be performed. If it has no metrics, the future
+   *     records progress in metrics of its own.
+   * @param executor
+   *     The executor to run the copy on.
+   * @return The future of the copy, which can be used to cancel it.
+   * @see #copyDirectory(Path, Path, CopyOptions)
+   */
+  public static FileOperationFuture copyDirectoryAsync(Path source, Path destination, CopyOptions options,
+      Executor executor) {
+
+    final FileOperationMetrics metrics = metricsOf(options);
+    return FileOperationFuture.start(executor, metrics,
+        (OperationControl control) -> DirectoryCopier.copy(source, destination, options, metrics, control));
+  }
+
+  /**
+   * Copies the given directory to the desired destination, writing each
+   * distinct file content only once. Files that share their size with another
+   * file are hashed in parallel; of every group of identical files only the
+   * first is copied, and the others are hardlinked (or reflinked, where
+   * hardlinks are not possible) to that copy.
+   * <p>
+   * Hardlinked files share their contents, so modifying one of them in place
+   * modifies all of them. Only use this for trees that are replaced rather
+   * than edited, or on file systems with reflinks.
+   *
+   * @param source
+   *     The directory to copy.
+   * @param destination
+   *     The destination to copy the directory to.
+   * @param options
+   *     How the unique files should be copied.
+   * @return How many files were linked and how many bytes that saved.
+   * @throws IOException
+   *     If the directory structure could not be created, or if any file failed
+   *     to be hashed, copied or linked. In the latter case every failure is
+   *     attached as a suppressed exception.
+   */
+  public static DeduplicationReport copyDirectoryDeduplicated(Path source, Path destination, CopyOptions options)
+      throws IOException {
+
+    return DirectoryDeduplicator.copy(source, destination, options);
+  }
+
+  /**
+   * Makes the destination a copy of the source directory, only copying the
+   * files that are missing from the destination or have changed since the last
+   * sync. Unlike {@link #copyDirectory(Path, Path)} the destination may already
+   * exist. Copied files keep the last modified time of their source, so an
+   * unchanged file is recognised on the next sync from its metadata alone.
+   *
+   * @param source
+   *     The directory to copy.
+   * @param destination
+   *     The directory to bring up to date.
+   * @param options
+   *     How changes are detected and how files are copied.
+   * @throws IOException
+   *     If the directory structure could not be created, or if any file failed
+   *     to sync. In the latter case every failure is attached as a suppressed
+   *     exception.
+   */
+  public static void syncDirectory(Path source, Path destination, SyncOptions options) throws IOException {
+    new DirectorySynchronizer(source, destination, options, options.getCopyOptions().getMetrics(),
+        OperationControl.blocking()).sync();
+  }
+
+  /**
+   * Brings the destination up to date with the source directory without
+   * blocking the calling thread.
+   *
+   * @param source
+   *     The directory to copy.
+   * @param destination
+   *     The directory to bring up to date.
+   * @param options
+   *     How changes are detected and how files are copied. If the copy options
+   *     have no metrics, the future records progress in metrics of its own.
+   * @param executor
+   *     The executor to run the sync on.
+   * @return The future of the sync, which can be used to cancel it.
+   * @see #syncDirectory(Path, Path, SyncOptions)
+   */
+  public static FileOperationFuture syncDirectoryAsync(Path source, Path destination, SyncOptions options,
+      Executor executor) {
+
+    final FileOperationMetrics metrics = metricsOf(options.getCopyOptions());
+    return FileOperationFuture.start(executor, metrics, (OperationControl control)
+        -> new DirectorySynchronizer(source, destination, options, metrics, control).sync());
+  }
+
+  /**
+   * Copies the source directory to the destination, then keeps the
+   * destination up to date with every later change to the source until the
+   * returned mirror is closed.
+   *
+   * @param source
+   *     The directory to mirror.
+   * @param destination
+   *     The directory to keep up to date.
+   * @param options
+   *     How changes are detected and copied.
+   * @param debounce
+   *     How long the source has to be quiet before changes are applied.
+   * @param unit
+   *     The unit of debounce.
+   * @return The running mirror.
+   * @throws IOException
+   *     If the initial copy failed or the source could not be watched.
+   * @see DirectoryMirror
+   */
+  public static DirectoryMirror mirrorDirectory(Path source, Path destination, SyncOptions options, long debounce,
+      TimeUnit unit) throws IOException {
+
+    return new DirectoryMirror(source, destination, options, debounce, unit).start();
   }
 
   /**
@@ -88,14 +275,12 @@ public class JEasyFiles {
    */
   @Deprecated
   public static void deleteDirectory(File directory) throws IOException {
-    if (directory.isDirectory())
-      for (File i : directory.listFiles())
-        deleteDirectory(i);
-    Files.delete(directory.toPath());
+    deleteDirectory(directory.toPath());
   }
 
   /**
-   * Deletes an entire directory and all it's sub folders and files.
+   * Deletes an entire directory and all it's sub folders and files. Symbolic
+   * links inside of the directory are deleted, not followed.
    *
    * @param directory
    *     The directory you wish to delete.
@@ -103,19 +288,271 @@ public class JEasyFiles {
    *     If something goes wrong trying to delete the files.
    */
   public static void deleteDirectory(Path directory) throws IOException {
-    deleteDirectory(directory.toFile());
+    deleteDirectory(directory, 1);
+  }
+
+  /**
+   * Deletes an entire directory and all it's sub folders and files, deleting
+   * up to parallelism entries at the same time. Symbolic links inside of the
+   * directory are deleted, not followed.
+   *
+   * @param directory
+   *     The directory you wish to delete.
+   * @param parallelism
+   *     The maximum number of files deleted at the same time.
+   * @throws IOException
+   *     If something goes wrong trying to delete the files. Every failure is
+   *     attached as a suppressed exception.
+   */
+  public static void deleteDirectory(Path directory, int parallelism) throws IOException {
+    deleteDirectory(directory, parallelism, null);
+  }
+
+  /**
+   * Deletes an entire directory and all it's sub folders and files, deleting
+   * up to parallelism entries at the same time and recording every deleted
+   * entry in the metrics. Symbolic links inside of the directory are deleted,
+   * not followed.
+   *
+   * @param directory
+   *     The directory you wish to delete.
+   * @param parallelism
+   *     The maximum number of files deleted at the same time.
+   * @param metrics
+   *     Where progress of the delete is recorded, or null.
+   * @throws IOException
+   *     If something goes wrong trying to delete the files. Every failure is
+   *     attached as a suppressed exception.
+   */
+  public static void deleteDirectory(Path directory, int parallelism, FileOperationMetrics metrics)
+      throws IOException {
+
+    if (parallelism < 1)
+      throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+    DirectoryDeleter.delete(directory, parallelism, metrics, OperationControl.blocking());
+  }
+
+  /**
+   * Deletes an entire directory without blocking the calling thread. Unlike
+   * {@link #deleteDirectoryAsync(Path, Executor)} the directory is deleted in
+   * place, so it can be cancelled part way with whatever has not been deleted
+   * yet left on disk.
+   *
+   * @param directory
+   *     The directory you wish to delete.
+   * @param parallelism
+   *     The maximum number of files deleted at the same time.
+   * @param executor
+   *     The executor to run the delete on.
+   * @return The future of the delete, which can be used to cancel it.
+   */
+  public static FileOperationFuture deleteDirectoryAsync(Path directory, int parallelism, Executor executor) {
+    if (parallelism < 1)
+      throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+    final FileOperationMetrics metrics = new FileOperationMetrics();
+    return FileOperationFuture.start(executor, metrics,
+        (OperationControl control) -> DirectoryDeleter.delete(directory, parallelism, metrics, control));
+  }
+
+  /**
+   * Deletes an entire directory in the background. The directory is first
+   * atomically renamed to a hidden sibling, so by the time this method returns
+   * it is already gone from its original location and a new directory can be
+   * created in its place. The renamed directory is then purged on a shared
+   * background executor.
+   *
+   * @param directory
+   *     The directory you wish to delete.
+   * @return A future that completes once the directory has been purged.
+   * @throws IOException
+   *     If the directory could not be renamed.
+   */
+  public static FileOperationFuture deleteDirectoryAsync(Path directory) throws IOException {
+    return deleteDirectoryAsync(directory, BackgroundExecutor.INSTANCE);
   }
 
   /**
+   * Deletes an entire directory in the background. The directory is first
+   * atomically renamed to a hidden sibling, so by the time this method returns
+   * it is already gone from its original location and a new directory can be
+   * created in its place. The renamed directory is then purged on the given
+   * executor.
+   *
+   * @param directory
+   *     The directory you wish to delete.
+   * @param executor
+   *     The executor that purges the renamed directory.
+   * @return A future that completes once the directory has been purged.
+   * @throws IOException
+   *     If the directory could not be renamed.
+   */
+  public static FileOperationFuture deleteDirectoryAsync(Path directory, Executor executor) throws IOException {
+    final Path tombstone = directory.resolveSibling(
+        "." + directory.getFileName() + ".deleted-" + UUID.randomUUID());
+    Files.move(directory, tombstone, StandardCopyOption.ATOMIC_MOVE);
+    return deleteDirectoryAsync(tombstone, Runtime.getRuntime().availableProcessors(), executor);
+  }
+
+  /**
+   * Checks if two directories contain the same structure: the same names at
+   * the same relative locations, each being a directory in both or a file in
+   * both. File contents are not compared.
+   * <p>
+   * Both trees are walked together one directory at a time, in sorted order,
+   * and the walk stops at the first difference. Only the listings of the
+   * directories still waiting to be compared are held in memory.
+   *
    * @param dir1
+   *     The first directory.
    * @param dir2
-   * @return
+   *     The second directory.
+   * @return True if both directories have the same structure.
    * @throws java.io.IOException
+   *     If either directory could not be read.
    */
   public static boolean isDirectoryStructureEqual(Path dir1, Path dir2) throws IOException {
-    return dir_to_map(dir1.toString().length(), dir1).equals(dir_to_map(dir2.toString().length(), dir2));
+    final Deque<Path[]> pending = new ArrayDeque<>();
+    pending.push(new Path[]{dir1, dir2});
+    while (!pending.isEmpty()) {
+      final Path[] pair = pending.pop();
+      final List<Path> entries1 = listSorted(pair[0]);
+      final List<Path> entries2 = listSorted(pair[1]);
+      if (entries1.size() != entries2.size())
+        return false;
+
+      for (int i = 0; i < entries1.size(); i++) {
+        final Path entry1 = entries1.get(i);
+        final Path entry2 = entries2.get(i);
+        if (!entry1.getFileName().toString().equals(entry2.getFileName().toString()))
+          return false;
+        final boolean isDir = Files.isDirectory(entry1);
+        if (isDir != Files.isDirectory(entry2))
+          return false;
+        if (isDir)
+          pending.push(new Path[]{entry1, entry2});
+      }
+    }
+    return true;
+  }
+
+
+  /**
+   * Compares the contents of two directory trees, hashing files on every
+   * available processor.
+   *
+   * @param dir1
+   *     The first (old) tree.
+   * @param dir2
+   *     The second (new) tree.
+   * @return The added, removed, modified and unchanged entries.
+   * @throws IOException
+   *     If either tree could not be walked or any file could not be read.
+   * @see #diffDirectories(Path, Path, int, FileHashCache)
+   */
+  public static DirectoryDiff diffDirectories(Path dir1, Path dir2) throws IOException {
+    return diffDirectories(dir1, dir2, Runtime.getRuntime().availableProcessors(), null);
+  }
+
+  /**
+   * Compares the contents of two directory trees. Files that exist in both
+   * trees with the same size are compared by content hash; the hashing is
+   * spread over parallelism threads and, if a cache is given, skipped for files
+   * that have not changed since they were cached.
+   *
+   * @param dir1
+   *     The first (old) tree.
+   * @param dir2
+   *     The second (new) tree.
+   * @param parallelism
+   *     The maximum number of files hashed at the same time.
+   * @param cache
+   *     Cache of previously computed hashes, or null to hash every file.
+   * @return The added, removed, modified and unchanged entries.
+   * @throws IOException
+   *     If either tree could not be walked or any file could not be read.
+   */
+  public static DirectoryDiff diffDirectories(Path dir1, Path dir2, int parallelism, FileHashCache cache)
+      throws IOException {
+
+    if (parallelism < 1)
+      throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+    return DirectoryDiffer.diff(dir1, dir2, parallelism, cache);
+  }
+
+  /**
+   * Checks if a directory still has the structure recorded in a snapshot,
+   * without needing the tree the snapshot was taken from.
+   *
+   * @param dir
+   *     The directory.
+   * @param snapshot
+   *     The snapshot to compare with.
+   * @return True if both have the same structure.
+   * @throws IOException
+   *     If the directory could not be walked.
+   * @see #isDirectoryStructureEqual(Path, Path)
+   */
+  public static boolean isDirectoryStructureEqual(Path dir, DirectoryManifest snapshot) throws IOException {
+    return snapshot.isStructureEqual(DirectoryManifest.snapshot(dir));
+  }
+
+  /**
+   * Compares an earlier snapshot with the current state of a directory tree.
+   * Only the current tree is walked, and only files whose metadata changed are
+   * read.
+   *
+   * @param snapshot
+   *     The earlier snapshot.
+   * @param dir
+   *     The current tree.
+   * @return The added, removed, modified and unchanged entries.
+   * @throws IOException
+   *     If the tree could not be walked or any file could not be read.
+   * @see DirectoryManifest#diff(Path, int, FileHashCache)
+   */
+  public static DirectoryDiff diffDirectories(DirectoryManifest snapshot, Path dir) throws IOException {
+    return snapshot.diff(dir, Runtime.getRuntime().availableProcessors(), null);
+  }
+
+  /**
+   * Measures the total size and number of files of a directory tree, listing
+   * directories on every available processor.
+   *
+   * @param dir
+   *     The directory to measure.
+   * @return The disk usage of the tree and of every subdirectory.
+   * @throws IOException
+   *     If any directory could not be listed.
+   * @see #getDiskUsage(Path, int, DiskUsageCache)
+   */
+  public static DiskUsage getDiskUsage(Path dir) throws IOException {
+    return getDiskUsage(dir, Runtime.getRuntime().availableProcessors(), null);
   }
 
+  /**
+   * Measures the total size and number of files of a directory tree. Each
+   * level of the tree is listed in parallel; if a cache is given, directories
+   * that have not changed since they were cached are not listed again, so
+   * measuring a mostly unchanged tree only has to check its directories.
+   * Symbolic links are not followed.
+   *
+   * @param dir
+   *     The directory to measure.
+   * @param parallelism
+   *     The maximum number of directories listed at the same time.
+   * @param cache
+   *     Cache of previously listed directories, or null to list every
+   *     directory.
+   * @return The disk usage of the tree and of every subdirectory.
+   * @throws IOException
+   *     If any directory could not be listed. Every failure is attached as a
+   *     suppressed exception.
+   */
+  public static DiskUsage getDiskUsage(Path dir, int parallelism, DiskUsageCache cache) throws IOException {
+    if (parallelism < 1)
+      throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+    return DiskUsageCalculator.calculate(dir, parallelism, cache);
+  }
 
   /**
    * Gets the App Data file pathname for this operating system.
@@ -160,26 +597,61 @@ public class JEasyFiles {
   }
 
   /**
-   * @param root
+   * Gets the metrics of the options, or new metrics if the options have none.
+   *
+   * @param options
+   *     The options.
+   * @return The metrics to record an operation in.
+   */
+  private static FileOperationMetrics metricsOf(CopyOptions options) {
+    return options.getMetrics() != null ? options.getMetrics() : new FileOperationMetrics();
+  }
+
+  /**
+   * Maps a path inside of the source tree onto the same relative location in
+   * the destination tree.
+   *
+   * @param source
+   *     Root of the source tree.
+   * @param destination
+   *     Root of the destination tree.
+   * @param path
+   *     A path inside of the source tree.
+   * @return The matching path inside of the destination tree.
+   */
+  static Path resolve(Path source, Path destination, Path path) {
+    return destination.resolve(source.relativize(path).toString());
+  }
+
+  /**
+   * Lists the entries of a directory, sorted by name.
+   *
    * @param dir
-   * @return
-   * @throws IOException
-   */
-  private static Map<String, Boolean> dir_to_map(int root, Path dir) throws IOException {
-    Map<String, Boolean> output = new HashMap<>();
-    final AtomicReference<IOException> ref = new AtomicReference<>();
-    Files.list(dir).forEach((Path p) -> {
-      boolean isDir = Files.isDirectory(p);
-      if (isDir)
-        try {
-          output.putAll(dir_to_map(root, p));
-        } catch (IOException ex) {
-          ref.set(ex);
-        }
-      output.put(p.toString().substring(root), isDir);
-    });
-    if (ref.get() != null)
-      throw ref.get();
+   *     The directory to list.
+   * @return The sorted entries.
+   * @throws IOException
+   *     If the directory could not be read.
+   */
+  private static List<Path> listSorted(Path dir) throws IOException {
+    final List<Path> output = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+      for (Path p : stream)
+        output.add(p);
+    }
+    output.sort(Comparator.comparing((Path p) -> p.getFileName().toString()));
     return output;
   }
+
+  /**
+   * Lazily created daemon threads for background work that was not given an
+   * executor.
+   */
+  private static final class BackgroundExecutor {
+
+    static final ExecutorService INSTANCE = Executors.newCachedThreadPool((Runnable r) -> {
+      final Thread thread = new Thread(r, "JEasyFiles background");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
 }
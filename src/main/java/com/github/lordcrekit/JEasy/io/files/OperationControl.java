@@ -0,0 +1,118 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.lordcrekit.JEasy.io.files;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Where the work of one bulk file operation runs, and whether it has been
+ * cancelled. Blocking operations use a fresh control that runs on a private
+ * pool; asynchronous operations share the control of their {@link
+ * FileOperationFuture}. The control also counts the helper threads of the
+ * operation, so that a bulk operation nested in another one (such as the
+ * ranges of a large file in a directory copy) shares its parallelism instead
+ * of multiplying it.
+ *
+ * @author William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu)
+ */
+final class OperationControl {
+
+  private final Executor executor;
+  private final AtomicInteger helpers;
+  private volatile boolean cancelled;
+
+  /**
+   * Constructs a new OperationControl.
+   *
+   * @param executor
+   *     The executor to run helper threads on, or null to create a private
+   *     pool for each phase of the operation.
+   */
+  OperationControl(Executor executor) {
+    this.executor = executor;
+    this.helpers = new AtomicInteger();
+  }
+
+  /**
+   * Constructs a control for a blocking operation.
+   *
+   * @return The control.
+   */
+  static OperationControl blocking() {
+    return new OperationControl(null);
+  }
+
+  Executor getExecutor() {
+    return this.executor;
+  }
+
+  /**
+   * Reserves helper threads, as many as wanted but no more than keeps the
+   * helpers of the whole operation below parallelism.
+   *
+   * @param wanted
+   *     The number of helpers wanted.
+   * @param parallelism
+   *     The maximum number of threads of the operation, the calling thread
+   *     included.
+   * @return The number of helpers reserved, which must each be released
+   *     with {@link #releaseHelper()}.
+   */
+  int reserveHelpers(int wanted, int parallelism) {
+    while (true) {
+      final int running = this.helpers.get();
+      final int output = Math.max(0, Math.min(wanted, parallelism - 1 - running));
+      if (output == 0 || this.helpers.compareAndSet(running, running + output))
+        return output;
+    }
+  }
+
+  /**
+   * Releases a helper reserved with {@link #reserveHelpers(int, int)}.
+   */
+  void releaseHelper() {
+    this.helpers.decrementAndGet();
+  }
+
+  boolean isCancelled() {
+    return this.cancelled;
+  }
+
+  void cancel() {
+    this.cancelled = true;
+  }
+
+  /**
+   * Stops the operation if it was cancelled.
+   *
+   * @throws CancellationException
+   *     If the operation was cancelled.
+   */
+  void throwIfCancelled() {
+    if (this.cancelled)
+      throw new CancellationException("File operation cancelled.");
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.lordcrekit.JEasy.io.files;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A gzip stream that compresses on several threads, like pigz. The data is
+ * cut into fixed size blocks, every block is compressed on its own as a
+ * separate gzip member, and the members are written in order. A gzip file made
+ * of several members is still a single valid gzip file: gunzip and {@link
+ * java.util.zip.GZIPInputStream} decompress it as one stream.
+ * <p>
+ * At most two blocks per thread are held in memory at any time.
+ *
+ * @author William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu)
+ */
+final class ParallelGzipOutputStream extends OutputStream {
+
+  static final int BLOCK_SIZE = 1024 * 1024;
+
+  private final OutputStream out;
+  private final ExecutorService pool;
+  private final int maxPending;
+  private final Deque<Future<byte[]>> pending;
+
+  private byte[] block;
+  private int blockLength;
+  private boolean closed;
+
+  /**
+   * Constructs a new ParallelGzipOutputStream.
+   *
+   * @param out
+   *     The stream to write the compressed data to.
+   * @param parallelism
+   *     The number of compressing threads.
+   */
+  ParallelGzipOutputStream(OutputStream out, int parallelism) {
+    this.out = out;
+    this.pool = Executors.newFixedThreadPool(parallelism, (Runnable r) -> {
+      final Thread thread = new Thread(r, "JEasyFiles gzip");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.maxPending = 2 * parallelism;
+    this.pending = new ArrayDeque<>();
+    this.block = new byte[BLOCK_SIZE];
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    this.block[this.blockLength++] = (byte) b;
+    if (this.blockLength == BLOCK_SIZE)
+      submitBlock();
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    while (len > 0) {
+      final int n = Math.min(len, BLOCK_SIZE - this.blockLength);
+      System.arraycopy(b, off, this.block, this.blockLength, n);
+      this.blockLength += n;
+      off += n;
+      len -= n;
+      if (this.blockLength == BLOCK_SIZE)
+        submitBlock();
+    }
+  }
+
+  /**
+   * Waits for every block written so far to be compressed and written.
+   *
+   * @throws IOException
+   *     If compressing or writing failed.
+   */
+  @Override
+  public void flush() throws IOException {
+    if (this.blockLength > 0)
+      submitBlock();
+    while (!this.pending.isEmpty())
+      writeOldest();
+    this.out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (this.closed)
+      return;
+    this.closed = true;
+    try {
+      flush();
+    } finally {
+      this.pool.shutdownNow();
+      this.out.close();
+    }
+  }
+
+  private void submitBlock() throws IOException {
+    final byte[] data = this.block;
+    final int length = this.blockLength;
+    this.pending.add(this.pool.submit(() -> compress(data, length)));
+    this.block = new byte[BLOCK_SIZE];
+    this.blockLength = 0;
+    while (this.pending.size() >= this.maxPending)
+      writeOldest();
+  }
+
+  private void writeOldest() throws IOException {
+    try {
+      this.out.write(this.pending.remove().get());
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while compressing.");
+    } catch (ExecutionException ex) {
+      throw new IOException("Failed to compress block.", ex.getCause());
+    }
+  }
+
+  private static byte[] compress(byte[] data, int length) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(length / 2 + 64);
+    try (GZIPOutputStream gzip = new GZIPOutputStream(bytes, 64 * 1024)) {
+      gzip.write(data, 0, length);
+    }
+    return bytes.toByteArray();
+  }
+}
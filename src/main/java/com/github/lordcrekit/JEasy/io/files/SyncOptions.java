@@ -0,0 +1,134 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.lordcrekit.JEasy.io.files;
+
+/**
+ * Settings for {@link JEasyFiles#syncDirectory(java.nio.file.Path,
+ * java.nio.file.Path, SyncOptions)}. Every setter returns the options object so
+ * they can be chained.
+ *
+ * @author William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu)
+ */
+public final class SyncOptions {
+
+  /**
+   * How a file that exists in both trees is judged to be unchanged.
+   */
+  public enum ChangeDetection {
+    /**
+     * Unchanged if the size and last modified time match. Only reads file
+     * metadata.
+     */
+    SIZE_AND_MTIME,
+    /**
+     * Unchanged if the size matches and both files hash to the same value.
+     * Reads every file that has the same size in both trees.
+     */
+    CONTENT_HASH
+  }
+
+  private ChangeDetection changeDetection;
+  private boolean deleteExtraneous;
+  private CopyOptions copyOptions;
+
+  /**
+   * Constructs a new SyncOptions that compares size and modified time, keeps
+   * extraneous destination files, and copies with the default {@link
+   * CopyOptions}.
+   */
+  public SyncOptions() {
+    this.changeDetection = ChangeDetection.SIZE_AND_MTIME;
+    this.deleteExtraneous = false;
+    this.copyOptions = new CopyOptions();
+  }
+
+  /**
+   * Gets how changed files are detected.
+   *
+   * @return The change detection mode.
+   */
+  public ChangeDetection getChangeDetection() {
+    return this.changeDetection;
+  }
+
+  /**
+   * Sets how changed files are detected.
+   *
+   * @param changeDetection
+   *     The change detection mode.
+   * @return Pointer back to this object.
+   */
+  public SyncOptions setChangeDetection(ChangeDetection changeDetection) {
+    if (changeDetection == null)
+      throw new NullPointerException("changeDetection");
+    this.changeDetection = changeDetection;
+    return this;
+  }
+
+  /**
+   * Gets if files and directories that only exist in the destination will be
+   * deleted.
+   *
+   * @return True if extraneous entries are deleted.
+   */
+  public boolean isDeleteExtraneous() {
+    return this.deleteExtraneous;
+  }
+
+  /**
+   * Sets if files and directories that only exist in the destination will be
+   * deleted.
+   *
+   * @param deleteExtraneous
+   *     True to delete extraneous entries.
+   * @return Pointer back to this object.
+   */
+  public SyncOptions setDeleteExtraneous(boolean deleteExtraneous) {
+    this.deleteExtraneous = deleteExtraneous;
+    return this;
+  }
+
+  /**
+   * Gets the options used to copy new and changed files.
+   *
+   * @return The copy options.
+   */
+  public CopyOptions getCopyOptions() {
+    return this.copyOptions;
+  }
+
+  /**
+   * Sets the options used to copy new and changed files.
+   *
+   * @param copyOptions
+   *     The copy options.
+   * @return Pointer back to this object.
+   */
+  public SyncOptions setCopyOptions(CopyOptions copyOptions) {
+    if (copyOptions == null)
+      throw new NullPointerException("copyOptions");
+    this.copyOptions = copyOptions;
+    return this;
+  }
+}
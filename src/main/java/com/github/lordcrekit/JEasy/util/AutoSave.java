@@ -0,0 +1,232 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.lordcrekit.JEasy.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Saves a {@link JEasyProperties} in the background whenever it changes, as
+ * started by {@link JEasyProperties#autoSave(Path)}. Changes are written once
+ * they have stopped for the quiet period, or once the oldest unsaved change is
+ * as old as the maximum delay, whichever comes first, so properties that
+ * change constantly are still saved regularly.
+ * <p>
+ * Every setter can be called while the auto save is running. A save that fails
+ * is retried after the next quiet period.
+ *
+ * @author William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu)
+ */
+public final class AutoSave implements Closeable {
+
+  private final JEasyProperties properties;
+  private final Path path;
+  private final JEasyProperties.Listener listener;
+  private final AtomicLong changes;
+  private final AtomicBoolean scheduled;
+  private volatile long quietPeriod;
+  private volatile long maxDelay;
+  private volatile boolean sync;
+  private volatile String comments;
+  private volatile long lastChange;
+  private volatile long firstUnsaved;
+  private volatile IOException failure;
+  private volatile boolean closed;
+  private long saved;
+
+  AutoSave(JEasyProperties properties, Path path) {
+    this.properties = properties;
+    this.path = path;
+    this.listener = (String key, String value) -> changed();
+    this.changes = new AtomicLong();
+    this.scheduled = new AtomicBoolean();
+    this.quietPeriod = TimeUnit.MILLISECONDS.toNanos(500);
+    this.maxDelay = TimeUnit.SECONDS.toNanos(5);
+    properties.addListener(this.listener);
+  }
+
+  /**
+   * Sets how long the properties must go unchanged before they are saved.
+   * Defaults to 500 milliseconds.
+   *
+   * @param quietPeriod
+   *     The quiet period.
+   * @param unit
+   *     The unit of the quiet period.
+   * @return Pointer back to this object.
+   * @throws IllegalArgumentException
+   *     If quietPeriod is negative.
+   */
+  public AutoSave setQuietPeriod(long quietPeriod, TimeUnit unit) {
+    if (quietPeriod < 0)
+      throw new IllegalArgumentException("Quiet period must not be negative: " + quietPeriod);
+    this.quietPeriod = unit.toNanos(quietPeriod);
+    return this;
+  }
+
+  /**
+   * Sets the longest a change can wait to be saved while the properties keep
+   * changing. Defaults to 5 seconds.
+   *
+   * @param maxDelay
+   *     The maximum delay.
+   * @param unit
+   *     The unit of the maximum delay.
+   * @return Pointer back to this object.
+   * @throws IllegalArgumentException
+   *     If maxDelay is negative.
+   */
+  public AutoSave setMaxDelay(long maxDelay, TimeUnit unit) {
+    if (maxDelay < 0)
+      throw new IllegalArgumentException("Maximum delay must not be negative: " + maxDelay);
+    this.maxDelay = unit.toNanos(maxDelay);
+    return this;
+  }
+
+  /**
+   * Sets if every save is forced to the storage device before the next one.
+   * This makes a save survive a power failure, at the cost of waiting for the
+   * device. Defaults to false.
+   *
+   * @param sync
+   *     True to force every save to the device.
+   * @return Pointer back to this object.
+   */
+  public AutoSave setSync(boolean sync) {
+    this.sync = sync;
+    return this;
+  }
+
+  /**
+   * Sets the comments written at the top of every save.
+   *
+   * @param comments
+   *     The comments, or null for none.
+   * @return Pointer back to this object.
+   */
+  public AutoSave setComments(String comments) {
+    this.comments = comments;
+    return this;
+  }
+
+  /**
+   * Gets why the last save failed.
+   *
+   * @return The failure, or null if the last save succeeded.
+   */
+  public IOException getFailure() {
+    return this.failure;
+  }
+
+  /**
+   * Saves every change that has not been saved yet, on the calling thread.
+   *
+   * @throws IOException
+   *     If the properties could not be saved.
+   */
+  public void flush() throws IOException {
+    save();
+  }
+
+  /**
+   * Stops saving changes, then saves every change that has not been saved yet.
+   *
+   * @throws IOException
+   *     If the final save failed.
+   */
+  @Override
+  public void close() throws IOException {
+    if (this.closed)
+      return;
+    this.closed = true;
+    this.properties.removeListener(this.listener);
+    save();
+  }
+
+  /**
+   * Run on the changing thread, so it only schedules work.
+   */
+  private void changed() {
+    final long now = System.nanoTime();
+    this.lastChange = now;
+    this.changes.incrementAndGet();
+    if (this.scheduled.compareAndSet(false, true)) {
+      this.firstUnsaved = now;
+      Scheduler.INSTANCE.schedule(this::tick, this.quietPeriod, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private void tick() {
+    if (this.closed)
+      return;
+    final long now = System.nanoTime();
+    final long due = Math.min(this.lastChange + this.quietPeriod, this.firstUnsaved + this.maxDelay);
+    if (due - now > 0) {
+      Scheduler.INSTANCE.schedule(this::tick, due - now, TimeUnit.NANOSECONDS);
+      return;
+    }
+    // Changes made from here on schedule a new tick, even during the save.
+    this.scheduled.set(false);
+    try {
+      save();
+    } catch (IOException ex) {
+      if (this.scheduled.compareAndSet(false, true)) {
+        this.firstUnsaved = now;
+        Scheduler.INSTANCE.schedule(this::tick, this.quietPeriod, TimeUnit.NANOSECONDS);
+      }
+    }
+  }
+
+  private synchronized void save() throws IOException {
+    final long changes = this.changes.get();
+    if (changes == this.saved)
+      return;
+    try {
+      this.properties.save(this.path, this.comments, this.sync);
+    } catch (IOException ex) {
+      this.failure = ex;
+      throw ex;
+    }
+    this.failure = null;
+    this.saved = changes;
+  }
+
+  /**
+   * The thread every auto save runs on.
+   */
+  private static final class Scheduler {
+
+    static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+      final Thread output = new Thread(r, "JEasyProperties auto save");
+      output.setDaemon(true);
+      return output;
+    });
+  }
+}
@@ -0,0 +1,204 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.lordcrekit.JEasy.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * The binary snapshot format of {@link JEasyProperties}, which can be loaded
+ * without parsing text and looked up in place by {@link MappedProperties}.
+ * Every number is a big endian int. A file is laid out as:
+ * <ul>
+ * <li>The magic bytes <code>0x89 'J' 'E' 'P'</code>. The first byte can not
+ * start UTF-8 text, so a text file is never mistaken for a binary one.</li>
+ * <li>The format version, the number of entries, and the number of slots in
+ * the hash table, which is a power of two at least twice the entries.</li>
+ * <li>The hash table: for each slot, the FNV-1a hash of the UTF-8 key and the
+ * offset of its entry from the start of the file, or two zeros if empty.
+ * Collisions are resolved by probing the following slots.</li>
+ * <li>The entries: the length of the UTF-8 key, the key, the length of the
+ * UTF-8 value, and the value.</li>
+ * <li>The CRC-32 of everything before it.</li>
+ * </ul>
+ *
+ * @author William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu)
+ */
+final class BinaryProperties {
+
+  static final int VERSION = 1;
+  static final int HEADER = 16;
+  static final int SLOT = 8;
+
+  private static final byte[] MAGIC = { (byte) 0x89, 'J', 'E', 'P' };
+
+  private BinaryProperties() {
+  }
+
+  /**
+   * Checks if a file starts with the magic bytes of the binary format.
+   *
+   * @param head
+   *     The first bytes of the file, from position 0 to the limit.
+   * @return True if the file is in the binary format.
+   */
+  static boolean isBinary(ByteBuffer head) {
+    if (head.limit() < MAGIC.length)
+      return false;
+    for (int i = 0; i < MAGIC.length; i++)
+      if (head.get(i) != MAGIC[i])
+        return false;
+    return true;
+  }
+
+  /**
+   * Encodes properties in the binary format.
+   *
+   * @param properties
+   *     The properties to encode. Must not change while they are encoded.
+   * @return The encoded file.
+   * @throws IOException
+   *     If the encoded file would be 2 GB or larger.
+   */
+  static ByteBuffer encode(Map<String, String> properties) throws IOException {
+    final int count = properties.size();
+    final byte[][] encoded = new byte[count * 2][];
+    int slots = 2;
+    while (slots < count * 2)
+      slots <<= 1;
+    long length = HEADER + (long) slots * SLOT + 4;
+    int n = 0;
+    for (Map.Entry<String, String> i : properties.entrySet()) {
+      encoded[n] = i.getKey().getBytes(StandardCharsets.UTF_8);
+      encoded[n + 1] = i.getValue().getBytes(StandardCharsets.UTF_8);
+      length += 8 + encoded[n].length + encoded[n + 1].length;
+      n += 2;
+    }
+    if (length > Integer.MAX_VALUE)
+      throw new IOException("Properties are too large for the binary format: " + length + " bytes");
+
+    final ByteBuffer output = ByteBuffer.allocate((int) length);
+    output.put(MAGIC).putInt(VERSION).putInt(count).putInt(slots);
+    output.position(HEADER + slots * SLOT);
+    final int mask = slots - 1;
+    for (int i = 0; i < encoded.length; i += 2) {
+      final int hash = hash(encoded[i], 0, encoded[i].length);
+      int slot = hash & mask;
+      while (output.getInt(HEADER + slot * SLOT + 4) != 0)
+        slot = (slot + 1) & mask;
+      output.putInt(HEADER + slot * SLOT, hash).putInt(HEADER + slot * SLOT + 4, output.position());
+      output.putInt(encoded[i].length).put(encoded[i]);
+      output.putInt(encoded[i + 1].length).put(encoded[i + 1]);
+    }
+    final CRC32 crc = new CRC32();
+    crc.update(output.array(), 0, output.position());
+    output.putInt((int) crc.getValue());
+    output.flip();
+    return output;
+  }
+
+  /**
+   * Checks that a whole file is a binary properties file this version can
+   * read, and that it is not corrupt.
+   *
+   * @param file
+   *     The file, from position 0 to the limit.
+   * @throws IOException
+   *     If the file is not in the binary format, is of an unknown version, or
+   *     is corrupt.
+   */
+  static void verify(ByteBuffer file) throws IOException {
+    if (file.limit() < HEADER + 4 || !isBinary(file))
+      throw new IOException("Not a binary properties file");
+    final int version = file.getInt(4);
+    if (version != VERSION)
+      throw new IOException("Unsupported binary properties version: " + version);
+    final int count = file.getInt(8);
+    final int slots = file.getInt(12);
+    if (count < 0 || slots < 2 || Integer.bitCount(slots) != 1 || slots <= count
+        || HEADER + (long) slots * SLOT + 4 > file.limit())
+      throw new IOException("Corrupt binary properties header");
+
+    final ByteBuffer view = file.duplicate();
+    view.position(0).limit(file.limit() - 4);
+    final CRC32 crc = new CRC32();
+    crc.update(view);
+    if ((int) crc.getValue() != file.getInt(file.limit() - 4))
+      throw new IOException("Binary properties checksum mismatch");
+  }
+
+  /**
+   * Verifies and decodes every entry of a binary properties file.
+   *
+   * @param file
+   *     The file, from position 0 to the limit.
+   * @param sink
+   *     Given each key and value, in the order they are stored.
+   * @throws IOException
+   *     If the file could not be verified, as by {@link #verify(ByteBuffer)}.
+   */
+  static void decode(ByteBuffer file, BiConsumer<String, String> sink) throws IOException {
+    verify(file);
+    final int count = file.getInt(8);
+    final ByteBuffer view = file.duplicate();
+    view.position(HEADER + file.getInt(12) * SLOT).limit(file.limit() - 4);
+    for (int i = 0; i < count; i++) {
+      final String key = decode(view);
+      sink.accept(key, decode(view));
+    }
+  }
+
+  /**
+   * Computes the 32 bit FNV-1a hash of some bytes.
+   *
+   * @param bytes
+   *     The bytes to hash.
+   * @param offset
+   *     Where the bytes start.
+   * @param length
+   *     How many bytes to hash.
+   * @return The hash.
+   */
+  static int hash(byte[] bytes, int offset, int length) {
+    int output = 0x811C9DC5;
+    for (int i = offset; i < offset + length; i++)
+      output = (output ^ (bytes[i] & 0xFF)) * 0x01000193;
+    return output;
+  }
+
+  private static String decode(ByteBuffer view) throws IOException {
+    if (view.remaining() < 4)
+      throw new IOException("Corrupt binary properties entry");
+    final int length = view.getInt();
+    if (length < 0 || length > view.remaining())
+      throw new IOException("Corrupt binary properties entry");
+    final byte[] bytes = new byte[length];
+    view.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
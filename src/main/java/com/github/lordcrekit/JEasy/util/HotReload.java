@@ -0,0 +1,303 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.lordcrekit.JEasy.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reloads a {@link JEasyProperties} whenever its file changes, as started by
+ * {@link JEasyProperties#watch(Path)}. Changes are noticed through a {@link
+ * WatchService}, and the file is also checked every poll interval, for file
+ * systems whose watch service does not report every change or that have none.
+ * <p>
+ * The file is parsed on a background thread once it has been quiet for the
+ * debounce period, and the new properties replace the old ones all at once, so
+ * readers never see a partly loaded file. A file that changes while it is
+ * parsed is parsed again, and a file that is missing or unreadable leaves the
+ * properties as they are.
+ * <p>
+ * A version of the file is recognised by its modified time, size and file
+ * key. A file modified moments before it was read could be rewritten again
+ * within the same clock tick without changing any of these, so such a file is
+ * parsed again on every check until its modified time is old enough to trust.
+ *
+ * @author William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu)
+ */
+public final class HotReload implements Closeable {
+
+  /**
+   * Files modified this recently before they are read are parsed again on the
+   * next check.
+   */
+  private static final long RACY_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+  private final JEasyProperties properties;
+  private final Path path;
+  private final WatchService watchService;
+  private final Thread thread;
+  private volatile long debounce;
+  private volatile long pollInterval;
+  private volatile IOException failure;
+  private volatile boolean closed;
+  private Stamp loaded;
+
+  private HotReload(JEasyProperties properties, Path path) {
+    this.properties = properties;
+    this.path = path.toAbsolutePath();
+    this.debounce = TimeUnit.MILLISECONDS.toNanos(100);
+    this.pollInterval = TimeUnit.SECONDS.toNanos(2);
+
+    WatchService watchService = null;
+    try {
+      watchService = this.path.getFileSystem().newWatchService();
+      this.path.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_MODIFY);
+    } catch (IOException | UnsupportedOperationException ex) {
+      // Falls back to polling alone.
+      close(watchService);
+      watchService = null;
+    }
+    this.watchService = watchService;
+    this.thread = new Thread(this::run, "JEasyProperties reload " + this.path);
+    this.thread.setDaemon(true);
+  }
+
+  /**
+   * Loads the file into the properties, then starts watching it.
+   *
+   * @param properties
+   *     The properties to keep up to date.
+   * @param path
+   *     The file to watch.
+   * @return The hot reload.
+   * @throws IOException
+   *     If the file could not be loaded.
+   */
+  static HotReload start(JEasyProperties properties, Path path) throws IOException {
+    final HotReload output = new HotReload(properties, path);
+    while (!output.reload())
+      ;
+    if (output.failure != null) {
+      output.close();
+      throw output.failure;
+    }
+    output.thread.start();
+    return output;
+  }
+
+  /**
+   * Sets how long the file must go unchanged before it is reloaded, so that
+   * a file is not parsed while it is still being written. Defaults to 100
+   * milliseconds.
+   *
+   * @param debounce
+   *     The debounce period.
+   * @param unit
+   *     The unit of the debounce period.
+   * @return Pointer back to this object.
+   * @throws IllegalArgumentException
+   *     If debounce is negative.
+   */
+  public HotReload setDebounce(long debounce, TimeUnit unit) {
+    if (debounce < 0)
+      throw new IllegalArgumentException("Debounce must not be negative: " + debounce);
+    this.debounce = unit.toNanos(debounce);
+    return this;
+  }
+
+  /**
+   * Sets how often the file is checked for changes that were not reported by
+   * the watch service. Defaults to 2 seconds.
+   *
+   * @param pollInterval
+   *     The poll interval.
+   * @param unit
+   *     The unit of the poll interval.
+   * @return Pointer back to this object.
+   * @throws IllegalArgumentException
+   *     If pollInterval is less than 1.
+   */
+  public HotReload setPollInterval(long pollInterval, TimeUnit unit) {
+    if (pollInterval < 1)
+      throw new IllegalArgumentException("Poll interval must be at least 1: " + pollInterval);
+    this.pollInterval = unit.toNanos(pollInterval);
+    return this;
+  }
+
+  /**
+   * Gets why the last reload failed.
+   *
+   * @return The failure, or null if the last reload succeeded.
+   */
+  public IOException getFailure() {
+    return this.failure;
+  }
+
+  /**
+   * Stops watching the file. Once this returns the properties are not
+   * reloaded anymore.
+   *
+   * @throws IOException
+   *     If the watch service could not be closed.
+   * @throws InterruptedIOException
+   *     If interrupted while waiting for a reload in progress to finish.
+   */
+  @Override
+  public void close() throws IOException {
+    this.closed = true;
+    this.thread.interrupt();
+    if (this.watchService != null)
+      this.watchService.close();
+    if (this.thread != Thread.currentThread())
+      try {
+        this.thread.join();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while stopping the reload.");
+      }
+  }
+
+  private void run() {
+    try {
+      while (!this.closed) {
+        if (this.watchService == null)
+          TimeUnit.NANOSECONDS.sleep(this.pollInterval);
+        else if (collect(this.watchService.poll(this.pollInterval, TimeUnit.NANOSECONDS))) {
+          // Waits for the writer to finish before parsing.
+          WatchKey next;
+          while ((next = this.watchService.poll(this.debounce, TimeUnit.NANOSECONDS)) != null)
+            collect(next);
+        }
+        while (!reload())
+          TimeUnit.NANOSECONDS.sleep(this.debounce);
+      }
+    } catch (ClosedWatchServiceException | InterruptedException ex) {
+      // Closed.
+    }
+  }
+
+  /**
+   * Checks if a key has an event for the watched file.
+   */
+  private boolean collect(WatchKey key) {
+    if (key == null)
+      return false;
+    boolean output = false;
+    for (WatchEvent<?> event : key.pollEvents())
+      output |= event.kind() == StandardWatchEventKinds.OVERFLOW
+          || this.path.getFileName().equals(event.context());
+    key.reset();
+    return output;
+  }
+
+  /**
+   * Parses the file if it changed since it was last loaded, and replaces the
+   * properties if what it holds is different.
+   *
+   * @return False if the file changed while it was parsed, so it should be
+   *     parsed again.
+   */
+  private boolean reload() {
+    try {
+      final long read = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+      final Stamp before = Stamp.of(this.path);
+      if (before.equals(this.loaded))
+        return true;
+
+      final ConcurrentHashMap<String, String> parsed = new ConcurrentHashMap<>();
+      JEasyProperties.parse(this.path, parsed::put);
+      if (!before.equals(Stamp.of(this.path)))
+        return false;
+
+      this.loaded = before.modified < read - RACY_NANOS ? before : null;
+      this.failure = null;
+      // Skipping identical contents keeps a file that is also saved by these
+      // properties from reloading itself in a loop.
+      if (!parsed.equals(this.properties.getProperties()))
+        this.properties.replace(parsed);
+      return true;
+    } catch (IOException ex) {
+      // Editors often delete a file before writing its replacement, so the
+      // properties are kept until the file can be read again.
+      this.failure = ex;
+      return true;
+    }
+  }
+
+  private static void close(WatchService watchService) {
+    if (watchService != null)
+      try {
+        watchService.close();
+      } catch (IOException ex) {
+        // Nothing was watched yet.
+      }
+  }
+
+  /**
+   * What identifies one version of a file.
+   */
+  private static final class Stamp {
+
+    private final long modified;
+    private final long size;
+    private final Object fileKey;
+
+    private Stamp(BasicFileAttributes attrs) {
+      this.modified = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+      this.size = attrs.size();
+      this.fileKey = attrs.fileKey();
+    }
+
+    static Stamp of(Path path) throws IOException {
+      return new Stamp(Files.readAttributes(path, BasicFileAttributes.class));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Stamp))
+        return false;
+      final Stamp other = (Stamp) obj;
+      return this.modified == other.modified && this.size == other.size
+          && Objects.equals(this.fileKey, other.fileKey);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(this.modified, this.size, this.fileKey);
+    }
+  }
+}
@@ -24,14 +24,39 @@
 package com.github.lordcrekit.JEasy.util;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
 import java.text.SimpleDateFormat;
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Properties;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 /**
  * JEasyProperties is a replacement for the {@link Properties} class. Thread
@@ -41,18 +66,47 @@ import java.util.Properties;
  * <p>
  * Also the old properties is ancient, not typesafe, and doesn't make use of any
  * modern java features.
+ * <p>
+ * Reading a property never locks. Saving writes the properties as they were at
+ * one point in time without stopping other threads from changing them: while a
+ * save is copying the properties, every change first records the value it
+ * replaces, so the copy can put back the values that changed after it began.
  *
  * @author William A Norman (Lordcrekit@gmail.com, normanwi@msu.edu)
  */
 public final class JEasyProperties {
 
-  private Map<String, String> properties;
+  /**
+   * Recorded as the previous value of a key that did not exist when a snapshot
+   * was taken. Compared by identity.
+   */
+  private static final String ABSENT = new String();
+
+  private static final Function<String, Integer> INT = Integer::valueOf;
+  private static final Function<String, Long> LONG = Long::valueOf;
+  private static final Function<String, Double> DOUBLE = Double::valueOf;
+  private static final Function<String, Boolean> BOOLEAN = Boolean::valueOf;
+  private static final Function<String, Duration> DURATION = Duration::parse;
+  private static final Function<String, List<String>> LIST = JEasyProperties::split;
+
+  private volatile ConcurrentHashMap<String, String> properties;
+  private final ReentrantReadWriteLock snapshotLock;
+  private final List<Snapshot> snapshots;
+  private final Map<String, String> view;
+  private final List<Listener> listeners;
+  private final ConcurrentHashMap<String, Parsed> parsed;
+  private volatile ConcurrentSkipListMap<String, String> index;
 
   /**
    * Default constructor for JEasyProperties.
    */
   public JEasyProperties() {
-    this.properties = Collections.synchronizedMap(new HashMap<>());
+    this.properties = new ConcurrentHashMap<>();
+    this.snapshotLock = new ReentrantReadWriteLock();
+    this.snapshots = new CopyOnWriteArrayList<>();
+    this.view = new View();
+    this.listeners = new CopyOnWriteArrayList<>();
+    this.parsed = new ConcurrentHashMap<>();
   }
 
   /**
@@ -62,9 +116,8 @@ public final class JEasyProperties {
    *     The object to copy.
    */
   public JEasyProperties(JEasyProperties orig) {
-    this.properties = new HashMap<>();
-    for (String key : orig.getProperties().keySet())
-      this.properties.put(key, orig.getProperties().get(key));
+    this();
+    this.properties.putAll(orig.snapshot());
   }
 
   /**
@@ -74,18 +127,72 @@ public final class JEasyProperties {
    *     The Properties object to copy.
    */
   public JEasyProperties(Properties props) {
-    this.properties = new HashMap<>();
-    for (Object key : props.keySet())
-      this.properties.put(key.toString(), props.get(key).toString());
+    this();
+    // Hashtable.forEach holds the lock of props, so it can't change underneath.
+    props.forEach((Object key, Object value) -> this.properties.put(key.toString(), value.toString()));
   }
 
   /**
-   * Gets a Key-Value Map of the properties.
+   * Gets a Key-Value Map of the properties. The map is a live view: it always
+   * shows the current properties, even after a load, and changes made through
+   * it are the same as calls to {@link #setProperty(String, String)}. Values
+   * can not be null.
    *
    * @return A key-value paired map.
    */
   public Map<String, String> getProperties() {
-    return this.properties;
+    return this.view;
+  }
+
+  /**
+   * Gets the properties whose keys start with the given prefix, sorted by key.
+   * The map is a live view, as with {@link #getProperties()}, and can only
+   * hold keys with the prefix.
+   * <p>
+   * The first sorted view of a JEasyProperties builds a sorted index of every
+   * key, which is kept up to date from then on, so finding the k properties
+   * of a view takes O(log n + k) time rather than a scan of every property.
+   *
+   * @param prefix
+   *     The prefix of the keys, such as <code>"db.pool."</code>.
+   * @return A sorted key-value paired map.
+   */
+  public SortedMap<String, String> getPropertiesWithPrefix(String prefix) {
+    return new Range("", prefix, successor(prefix));
+  }
+
+  /**
+   * Gets the properties whose keys are from fromKey, inclusive, to toKey,
+   * exclusive, sorted by key. The map is a live view, as with {@link
+   * #getPropertiesWithPrefix(String)}.
+   *
+   * @param fromKey
+   *     The lowest key, or null for no lowest key.
+   * @param toKey
+   *     The key after the highest key, or null for no highest key.
+   * @return A sorted key-value paired map.
+   * @throws IllegalArgumentException
+   *     If fromKey is greater than toKey.
+   */
+  public SortedMap<String, String> getPropertiesInRange(String fromKey, String toKey) {
+    if (fromKey != null && toKey != null && fromKey.compareTo(toKey) > 0)
+      throw new IllegalArgumentException("fromKey is greater than toKey: " + fromKey + ", " + toKey);
+    return new Range("", fromKey, toKey);
+  }
+
+  /**
+   * Gets the properties whose keys start with the given namespace, with the
+   * namespace removed from their keys, sorted by key. For example, with the
+   * namespace <code>"db.pool."</code>, the key <code>"size"</code> is the
+   * property <code>"db.pool.size"</code>. The map is a live view, as with
+   * {@link #getPropertiesWithPrefix(String)}.
+   *
+   * @param namespace
+   *     The prefix of the keys.
+   * @return A sorted key-value paired map.
+   */
+  public SortedMap<String, String> getNamespace(String namespace) {
+    return new Range(namespace, namespace, successor(namespace));
   }
 
   /**
@@ -96,7 +203,7 @@ public final class JEasyProperties {
    * @return
    */
   public String getProperty(String key) {
-    return getProperties().get(key);
+    return this.properties.get(key);
   }
 
   /**
@@ -108,7 +215,129 @@ public final class JEasyProperties {
    * @return
    */
   public String getProperty(String key, String defaultValue) {
-    return getProperties().getOrDefault(key, defaultValue);
+    return this.properties.getOrDefault(key, defaultValue);
+  }
+
+  /**
+   * Gets the value of the given key as an int, or the given default value if
+   * the key does not exist. The parsed value is cached until the key changes.
+   *
+   * @param key
+   *     The key to get.
+   * @param defaultValue
+   *     The value to return if the key does not exist.
+   * @return The value.
+   * @throws NumberFormatException
+   *     If the value is not an int.
+   */
+  public int getInt(String key, int defaultValue) {
+    final Integer output = parsed(key, INT);
+    return output == null ? defaultValue : output;
+  }
+
+  /**
+   * Gets the value of the given key as a long, or the given default value if
+   * the key does not exist. The parsed value is cached until the key changes.
+   *
+   * @param key
+   *     The key to get.
+   * @param defaultValue
+   *     The value to return if the key does not exist.
+   * @return The value.
+   * @throws NumberFormatException
+   *     If the value is not a long.
+   */
+  public long getLong(String key, long defaultValue) {
+    final Long output = parsed(key, LONG);
+    return output == null ? defaultValue : output;
+  }
+
+  /**
+   * Gets the value of the given key as a double, or the given default value if
+   * the key does not exist. The parsed value is cached until the key changes.
+   *
+   * @param key
+   *     The key to get.
+   * @param defaultValue
+   *     The value to return if the key does not exist.
+   * @return The value.
+   * @throws NumberFormatException
+   *     If the value is not a double.
+   */
+  public double getDouble(String key, double defaultValue) {
+    final Double output = parsed(key, DOUBLE);
+    return output == null ? defaultValue : output;
+  }
+
+  /**
+   * Gets the value of the given key as a boolean, or the given default value
+   * if the key does not exist. As with {@link Boolean#parseBoolean(String)},
+   * any value other than "true", ignoring case, is false.
+   *
+   * @param key
+   *     The key to get.
+   * @param defaultValue
+   *     The value to return if the key does not exist.
+   * @return The value.
+   */
+  public boolean getBoolean(String key, boolean defaultValue) {
+    final Boolean output = parsed(key, BOOLEAN);
+    return output == null ? defaultValue : output;
+  }
+
+  /**
+   * Gets the value of the given key as a Duration in the format of {@link
+   * Duration#parse(CharSequence)}, such as "PT30S", or the given default value
+   * if the key does not exist. The parsed value is cached until the key
+   * changes.
+   *
+   * @param key
+   *     The key to get.
+   * @param defaultValue
+   *     The value to return if the key does not exist.
+   * @return The value.
+   * @throws java.time.format.DateTimeParseException
+   *     If the value is not a Duration.
+   */
+  public Duration getDuration(String key, Duration defaultValue) {
+    final Duration output = parsed(key, DURATION);
+    return output == null ? defaultValue : output;
+  }
+
+  /**
+   * Gets the value of the given key as the constant of the given enum with the
+   * same name, or the given default value if the key does not exist. The
+   * parsed value is cached until the key changes.
+   *
+   * @param <E>
+   *     The enum.
+   * @param key
+   *     The key to get.
+   * @param type
+   *     The class of the enum.
+   * @param defaultValue
+   *     The value to return if the key does not exist.
+   * @return The value.
+   * @throws IllegalArgumentException
+   *     If the enum has no constant with the name of the value.
+   */
+  public <E extends Enum<E>> E getEnum(String key, Class<E> type, E defaultValue) {
+    final E output = parsed(key, type);
+    return output == null ? defaultValue : output;
+  }
+
+  /**
+   * Gets the value of the given key split on commas, with whitespace around
+   * each element removed, or an empty list if the key does not exist or is
+   * blank. The list can not be changed, and is cached until the key changes.
+   *
+   * @param key
+   *     The key to get.
+   * @return The elements of the value.
+   */
+  public List<String> getList(String key) {
+    final List<String> output = parsed(key, LIST);
+    return output == null ? Collections.emptyList() : output;
   }
 
   /**
@@ -119,9 +348,25 @@ public final class JEasyProperties {
    * @param value
    *     The value being saved to the key.
    * @return Pointer back to this object.
+   * @throws NullPointerException
+   *     If key or value is null.
    */
   public JEasyProperties setProperty(String key, String value) {
-    this.properties.put(key, value);
+    if (value == null)
+      throw new NullPointerException("value");
+    write(key, value);
+    return this;
+  }
+
+  /**
+   * Removes the given key, if it exists.
+   *
+   * @param key
+   *     The key that is being removed.
+   * @return Pointer back to this object.
+   */
+  public JEasyProperties removeProperty(String key) {
+    write(key, null);
     return this;
   }
 
@@ -199,7 +444,101 @@ public final class JEasyProperties {
   }
 
   /**
-   * Loads the properties from a given InputStream.
+   * Saves the properties to the given OutputStream in the binary snapshot
+   * format, which {@link #load(InputStream)} reads without parsing text and
+   * {@link MappedProperties} looks up in place. Comments and timestamps are
+   * not kept.
+   *
+   * @param outstream
+   *     The OutputStream write to.
+   * @return Pointer back to this object.
+   * @throws IOException
+   *     If something goes wrong while attempting to save.
+   * @see BinaryProperties
+   */
+  public JEasyProperties saveBinary(OutputStream outstream) throws IOException {
+    final ByteBuffer encoded = BinaryProperties.encode(snapshot());
+    outstream.write(encoded.array(), 0, encoded.limit());
+    outstream.flush();
+    return this;
+  }
+
+  /**
+   * Saves the properties to the given Path in the binary snapshot format, as
+   * with {@link #saveBinary(OutputStream)}.
+   *
+   * @param path
+   *     Path to the file to save to.
+   * @return Pointer back to this object.
+   * @throws IOException
+   *     If something goes wrong while attempting to save.
+   */
+  public JEasyProperties saveBinary(Path path) throws IOException {
+    try (OutputStream out = Files.newOutputStream(path)) {
+      saveBinary(out);
+    }
+    return this;
+  }
+
+  /**
+   * Keeps the given Path up to date with the properties from now on. Every
+   * change schedules a save on a background thread, after the changes have
+   * stopped for the quiet period of the returned object; a burst of changes
+   * is written with a single save. Changing a property never waits for a save.
+   * <p>
+   * Each save writes a temporary file next to the path, which then replaces
+   * the file in one atomic move, so a crash during a save leaves the previous
+   * file intact. A symbolic link is followed, and the permissions of the file
+   * are kept. Close the returned object to stop, which saves any change that
+   * has not been saved yet.
+   *
+   * @param path
+   *     Path to the file to keep up to date.
+   * @return The auto save, to configure or stop it.
+   */
+  public AutoSave autoSave(Path path) {
+    return new AutoSave(this, path);
+  }
+
+  /**
+   * Persists the properties by journaling every change next to the given base
+   * file. The base file and the journal are loaded first, replacing every
+   * property, then each change appends one record to the journal, which is
+   * folded back into the base file in the background once it grows large.
+   *
+   * @param base
+   *     The base properties file. Need not exist yet.
+   * @return The journal, to configure or stop it.
+   * @throws IOException
+   *     If the base file or journal could not be read, or the journal could
+   *     not be opened.
+   * @see Journal
+   */
+  public Journal openJournal(Path base) throws IOException {
+    return Journal.open(this, base);
+  }
+
+  /**
+   * Keeps the properties up to date with the given file. The file is loaded
+   * first, replacing every property, then reloaded in the background whenever
+   * it changes. Each reload replaces every property at once, so readers see
+   * either the old file or the new one, never a mix.
+   *
+   * @param path
+   *     The file to load and watch.
+   * @return The hot reload, to configure or stop it.
+   * @throws IOException
+   *     If the file could not be loaded.
+   * @see HotReload
+   */
+  public HotReload watch(Path path) throws IOException {
+    return HotReload.start(this, path);
+  }
+
+  /**
+   * Loads the properties from a given InputStream, in either the text format
+   * or the binary snapshot format of {@link #saveBinary(OutputStream)}, which
+   * is told apart by its first bytes.
    *
    * @param instream
    *     The InputStream to use.
@@ -208,12 +547,31 @@ public final class JEasyProperties {
    *     If something goes wrong while attempting to load.
    */
   public JEasyProperties load(InputStream instream) throws IOException {
-    load(new BufferedReader(new InputStreamReader(instream)));
+    final InputStream in = instream.markSupported() ? instream : new BufferedInputStream(instream);
+    in.mark(4);
+    final byte[] head = new byte[4];
+    int read = 0;
+    for (int n; read < head.length && (n = in.read(head, read, head.length - read)) != -1; )
+      read += n;
+    in.reset();
+    if (!BinaryProperties.isBinary(ByteBuffer.wrap(head, 0, read))) {
+      load(new BufferedReader(new InputStreamReader(in)));
+      return this;
+    }
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[8192];
+    for (int n; (n = in.read(buffer)) != -1; )
+      bytes.write(buffer, 0, n);
+    final ConcurrentHashMap<String, String> loaded = new ConcurrentHashMap<>();
+    BinaryProperties.decode(ByteBuffer.wrap(bytes.toByteArray()), loaded::put);
+    replace(loaded);
     return this;
   }
 
   /**
-   * Loads the properties from a given Reader.
+   * Loads the properties from a given Reader. Only the text format can be
+   * read from a Reader.
    *
    * @param reader
    *     The Reader to use.
@@ -237,14 +595,16 @@ public final class JEasyProperties {
    */
   @Deprecated
   public JEasyProperties load(File file) throws IOException {
-    try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-      load(reader);
+    try (InputStream in = new FileInputStream(file)) {
+      load(in);
     }
     return this;
   }
 
   /**
-   * Loads the properties from the given filepath.
+   * Loads the properties from the given filepath, in either the text format
+   * or the binary snapshot format of {@link #saveBinary(Path)}, which is told
+   * apart by its first bytes. Text is read as UTF-8.
    *
    * @param path
    *     Path to the file to read from.
@@ -253,9 +613,9 @@ public final class JEasyProperties {
    *     If something goes wrong while attempting to read the file.
    */
   public JEasyProperties load(Path path) throws IOException {
-    try (BufferedReader reader = Files.newBufferedReader(path)) {
-      load(reader);
-    }
+    final ConcurrentHashMap<String, String> loaded = new ConcurrentHashMap<>();
+    parse(path, loaded::put);
+    replace(loaded);
     return this;
   }
 
@@ -283,8 +643,8 @@ public final class JEasyProperties {
       for (String i : comments.split("\n"))
         writer.write('#' + i + "\n");
     writer.write(new SimpleDateFormat("'#JEasyted on 'yyyy-MM-dd'T'HH.mm.ss'GMT'Z'\n'").format(new Date()));
-    for (String key : this.properties.keySet())
-      writer.write(key + "=" + this.properties.get(key) + "\n");
+    for (Map.Entry<String, String> i : snapshot().entrySet())
+      writer.write(i.getKey() + "=" + i.getValue() + "\n");
     writer.flush();
   }
 
@@ -296,14 +656,666 @@ public final class JEasyProperties {
    * @throws IOException
    */
   private void load(BufferedReader reader) throws IOException {
-    this.properties = Collections.synchronizedMap(new HashMap<>());
-    while (reader.ready()) {
-      String no_comments = reader.readLine().split("#")[0];
-      int eqind = no_comments.indexOf('=');
-      if (eqind != -1)
-        this.properties.put(no_comments.substring(0, eqind), no_comments.length() > eqind
-            ? no_comments.substring(eqind + 1, no_comments.length())
-            : null);
+    final ConcurrentHashMap<String, String> loaded = new ConcurrentHashMap<>();
+    PropertiesParser.parse(reader, loaded::put);
+    replace(loaded);
+  }
+
+  /**
+   * Saves the properties atomically through a temporary file. A symbolic link
+   * at path is followed, so the file it points to is replaced, and the
+   * permissions of the file are kept.
+   *
+   * @param path
+   *     Path to the file to save to.
+   * @param comments
+   *     Comments to save with the properties.
+   * @param sync
+   *     True to force the file, and the rename, to the storage device before
+   *     returning.
+   * @throws IOException
+   *     If the properties could not be saved. The file at path is unchanged.
+   */
+  void save(Path path, String comments, boolean sync) throws IOException {
+    Path target = path;
+    Set<PosixFilePermission> permissions = null;
+    try {
+      target = path.toRealPath();
+      permissions = Files.getPosixFilePermissions(target);
+    } catch (NoSuchFileException ex) {
+      // Saved for the first time.
+    } catch (UnsupportedOperationException ex) {
+      // Not a POSIX file system.
+    }
+
+    final Path temp = target.resolveSibling("." + target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+    try {
+      try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+        if (permissions != null)
+          Files.setPosixFilePermissions(temp, permissions);
+        save(new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1)), comments);
+        if (sync)
+          channel.force(true);
+      }
+      Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+    if (sync)
+      syncDirectory(target.toAbsolutePath().getParent());
+  }
+
+  /**
+   * Parses a properties file in either the text format or the binary format.
+   * Text is read as UTF-8.
+   *
+   * @param path
+   *     The file to parse.
+   * @param sink
+   *     Given each key and value.
+   * @throws IOException
+   *     If the file could not be read or is a corrupt binary file.
+   */
+  static void parse(Path path, BiConsumer<String, String> sink) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      final ByteBuffer head = ByteBuffer.allocate(4);
+      read(channel, head);
+      if (!BinaryProperties.isBinary(head)) {
+        PropertiesParser.parse(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), -1), sink);
+        return;
+      }
+
+      final long length = channel.size();
+      if (length > Integer.MAX_VALUE)
+        throw new IOException("File is too large to load: " + path);
+      final ByteBuffer file = ByteBuffer.allocate((int) length);
+      read(channel, file);
+      BinaryProperties.decode(file, sink);
+    }
+  }
+
+  /**
+   * Fills a buffer from the start of a file, or with the whole file if it is
+   * shorter, then flips it.
+   */
+  private static void read(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining())
+      if (channel.read(buffer, buffer.position()) == -1)
+        break;
+    buffer.flip();
+  }
+
+  /**
+   * Forces a rename in a directory to the storage device. Not every platform
+   * can open a directory, so failures are ignored.
+   */
+  private static void syncDirectory(Path dir) {
+    try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+      channel.force(true);
+    } catch (IOException ex) {
+      // The file itself is already on the device.
+    }
+  }
+
+  /**
+   * Registers a listener that is told about every change.
+   *
+   * @param listener
+   *     The listener.
+   */
+  void addListener(Listener listener) {
+    this.listeners.add(listener);
+  }
+
+  /**
+   * Removes a listener added by {@link #addListener(Listener)}.
+   *
+   * @param listener
+   *     The listener.
+   */
+  void removeListener(Listener listener) {
+    this.listeners.remove(listener);
+  }
+
+  /**
+   * Sets or removes a property, first recording its previous value in every
+   * snapshot being taken.
+   *
+   * @param key
+   *     The key to change.
+   * @param value
+   *     The new value, or null to remove the key.
+   */
+  private void write(String key, String value) {
+    this.snapshotLock.readLock().lock();
+    try {
+      final ConcurrentHashMap<String, String> properties = this.properties;
+      // Listeners run while the key is locked, so they see the changes of one
+      // key in the same order as the map does.
+      properties.compute(key, (String k, String previous) -> {
+        for (Listener i : this.listeners)
+          i.changed(k, value);
+        for (Snapshot i : this.snapshots)
+          if (i.source == properties)
+            i.previous.putIfAbsent(k, previous == null ? ABSENT : previous);
+        // The index can not be built or replaced while the read lock is held.
+        final ConcurrentSkipListMap<String, String> index = this.index;
+        if (index != null)
+          if (value == null)
+            index.remove(k);
+          else
+            index.put(k, value);
+        return value;
+      });
+    } finally {
+      this.snapshotLock.readLock().unlock();
+    }
+    // Only frees memory; a stale entry is never used, see parsed().
+    this.parsed.remove(key);
+    written(key);
+  }
+
+  /**
+   * Replaces every property at once. Snapshots being taken of the old
+   * properties are unaffected, since nothing changes the old map afterwards.
+   *
+   * @param properties
+   *     The new properties.
+   */
+  void replace(ConcurrentHashMap<String, String> properties) {
+    this.snapshotLock.writeLock().lock();
+    try {
+      this.properties = properties;
+      // Rebuilt by the next sorted view that is read.
+      this.index = null;
+      // Listeners are told while no key can change, so they see the replace
+      // after every change to the old properties and before any to the new.
+      for (Listener i : this.listeners)
+        i.changed(null, null);
+    } finally {
+      this.snapshotLock.writeLock().unlock();
+    }
+    this.parsed.clear();
+    written(null);
+  }
+
+  /**
+   * Tells every listener that a change can be seen. Every listener is told
+   * even if one throws.
+   *
+   * @param key
+   *     The changed key, or null if every property was replaced.
+   */
+  private void written(String key) {
+    RuntimeException failure = null;
+    for (Listener i : this.listeners)
+      try {
+        i.written(key);
+      } catch (RuntimeException ex) {
+        if (failure == null)
+          failure = ex;
+        else
+          failure.addSuppressed(ex);
+      }
+    if (failure != null)
+      throw failure;
+  }
+
+  /**
+   * Gets the sorted index of the properties, building it if there is none.
+   * Writers are held up while it is built.
+   *
+   * @return The index.
+   */
+  private ConcurrentSkipListMap<String, String> index() {
+    final ConcurrentSkipListMap<String, String> output = this.index;
+    if (output != null)
+      return output;
+    this.snapshotLock.writeLock().lock();
+    try {
+      if (this.index == null)
+        this.index = new ConcurrentSkipListMap<>(this.properties);
+      return this.index;
+    } finally {
+      this.snapshotLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Gets the lowest String greater than every String that starts with the
+   * given prefix.
+   *
+   * @param prefix
+   *     The prefix.
+   * @return The String, or null if there is none.
+   */
+  private static String successor(String prefix) {
+    int end = prefix.length();
+    while (end > 0 && prefix.charAt(end - 1) == Character.MAX_VALUE)
+      end--;
+    if (end == 0)
+      return null;
+    return prefix.substring(0, end - 1) + (char) (prefix.charAt(end - 1) + 1);
+  }
+
+  /**
+   * Parses the value of a key, using the cached result if the value has not
+   * changed since it was parsed.
+   *
+   * @param key
+   *     The key to parse.
+   * @param parser
+   *     Parses the value. Also identifies the type it parses to, so must be
+   *     one of the constants of this class.
+   * @return The parsed value, or null if the key does not exist.
+   */
+  private <T> T parsed(String key, Function<String, T> parser) {
+    return parsed(key, parser, parser);
+  }
+
+  /**
+   * Parses the value of a key, using the cached result if the value has not
+   * changed since it was parsed with the same type.
+   *
+   * @param key
+   *     The key to parse.
+   * @param type
+   *     Identifies the type the value is parsed to.
+   * @param parser
+   *     Parses the value.
+   * @return The parsed value, or null if the key does not exist.
+   */
+  @SuppressWarnings("unchecked")
+  private <T> T parsed(String key, Object type, Function<String, T> parser) {
+    final String raw = this.properties.get(key);
+    if (raw == null)
+      return null;
+    final Parsed cached = cached(key, raw, type);
+    if (cached != null)
+      return (T) cached.value;
+    final T output = parser.apply(raw);
+    this.parsed.put(key, new Parsed(raw, type, output));
+    return output;
+  }
+
+  /**
+   * Parses the value of a key to a constant of an enum, using the cached
+   * result if the value has not changed since it was parsed with the same
+   * enum. Unlike a parser capturing the enum, nothing is allocated on a cache
+   * hit.
+   *
+   * @param key
+   *     The key to parse.
+   * @param type
+   *     The enum to parse to.
+   * @return The parsed value, or null if the key does not exist.
+   * @throws IllegalArgumentException
+   *     If the enum has no constant with the name of the value.
+   */
+  private <E extends Enum<E>> E parsed(String key, Class<E> type) {
+    final String raw = this.properties.get(key);
+    if (raw == null)
+      return null;
+    final Parsed cached = cached(key, raw, type);
+    if (cached != null)
+      return type.cast(cached.value);
+    final E output = Enum.valueOf(type, raw.trim());
+    this.parsed.put(key, new Parsed(raw, type, output));
+    return output;
+  }
+
+  /**
+   * Gets the cached result of parsing a key, if it was parsed from the given
+   * value with the given type.
+   */
+  private Parsed cached(String key, String raw, Object type) {
+    // A cached value is only used while the very String it was parsed from is
+    // still stored, so a change racing with caching it can never be missed.
+    final Parsed output = this.parsed.get(key);
+    return output != null && output.raw == raw && output.type == type ? output : null;
+  }
+
+  private static List<String> split(String value) {
+    if (value.trim().isEmpty())
+      return Collections.emptyList();
+    final String[] elements = value.split(",");
+    for (int i = 0; i < elements.length; ++i)
+      elements[i] = elements[i].trim();
+    return Collections.unmodifiableList(Arrays.asList(elements));
+  }
+
+  /**
+   * Copies the properties as they were when this method was called. Writers
+   * are only held up while the snapshot is registered, not while it is copied.
+   *
+   * @return The properties.
+   */
+  private Map<String, String> snapshot() {
+    final Snapshot snapshot;
+    this.snapshotLock.writeLock().lock();
+    try {
+      snapshot = new Snapshot(this.properties);
+      this.snapshots.add(snapshot);
+    } finally {
+      this.snapshotLock.writeLock().unlock();
+    }
+
+    try {
+      final Map<String, String> output = new HashMap<>();
+      for (Map.Entry<String, String> i : snapshot.source.entrySet()) {
+        // The value is read before checking for a change, so a change made in
+        // between is always seen and its previous value used instead.
+        final String value = i.getValue();
+        if (!snapshot.previous.containsKey(i.getKey()))
+          output.put(i.getKey(), value);
+      }
+      for (Map.Entry<String, String> i : snapshot.previous.entrySet())
+        if (i.getValue() != ABSENT)
+          output.put(i.getKey(), i.getValue());
+      return output;
+    } finally {
+      this.snapshots.remove(snapshot);
+    }
+  }
+
+  /**
+   * Told about every change to a JEasyProperties.
+   */
+  interface Listener {
+
+    /**
+     * Called on the changing thread while the changed key is locked, or while
+     * every key is locked if every property was replaced, so it must not
+     * block. If it throws, the change is not made.
+     *
+     * @param key
+     *     The changed key, or null if every property was replaced.
+     * @param value
+     *     The new value, or null if the key was removed.
+     */
+    void changed(String key, String value);
+
+    /**
+     * Called on the changing thread after {@link #changed(String, String)},
+     * once the change can be seen by readers. No lock is held, so this may
+     * block, such as for I/O, holding up only the changing thread. If it
+     * throws, the change has still been made.
+     *
+     * @param key
+     *     The changed key, or null if every property was replaced.
+     */
+    default void written(String key) {
+    }
+  }
+
+  /**
+   * The values keys had before they were changed while a snapshot was taken.
+   */
+  private static final class Snapshot {
+
+    final ConcurrentHashMap<String, String> source;
+    final ConcurrentHashMap<String, String> previous;
+
+    Snapshot(ConcurrentHashMap<String, String> source) {
+      this.source = source;
+      this.previous = new ConcurrentHashMap<>();
+    }
+  }
+
+  /**
+   * A parsed value, and the String it was parsed from.
+   */
+  private static final class Parsed {
+
+    final String raw;
+    final Object type;
+    final Object value;
+
+    Parsed(String raw, Object type, Object value) {
+      this.raw = raw;
+      this.type = type;
+      this.value = value;
+    }
+  }
+
+  /**
+   * The map returned by {@link #getProperties()}. Every change goes through
+   * {@link #write(String, String)} so that snapshots see it.
+   */
+  private final class View extends AbstractMap<String, String> {
+
+    @Override
+    public int size() {
+      return JEasyProperties.this.properties.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return key != null && JEasyProperties.this.properties.containsKey(key);
+    }
+
+    @Override
+    public String get(Object key) {
+      return key == null ? null : JEasyProperties.this.properties.get(key);
+    }
+
+    @Override
+    public String put(String key, String value) {
+      final String output = get(key);
+      setProperty(key, value);
+      return output;
+    }
+
+    @Override
+    public String remove(Object key) {
+      final String output = get(key);
+      if (output != null)
+        write((String) key, null);
+      return output;
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+      return new AbstractSet<Map.Entry<String, String>>() {
+        @Override
+        public int size() {
+          return View.this.size();
+        }
+
+        @Override
+        public Iterator<Map.Entry<String, String>> iterator() {
+          final Iterator<Map.Entry<String, String>> iterator
+              = JEasyProperties.this.properties.entrySet().iterator();
+          return new Iterator<Map.Entry<String, String>>() {
+            private Map.Entry<String, String> last;
+
+            @Override
+            public boolean hasNext() {
+              return iterator.hasNext();
+            }
+
+            @Override
+            public Map.Entry<String, String> next() {
+              this.last = iterator.next();
+              return new AbstractMap.SimpleImmutableEntry<>(this.last);
+            }
+
+            @Override
+            public void remove() {
+              if (this.last == null)
+                throw new IllegalStateException();
+              write(this.last.getKey(), null);
+              this.last = null;
+            }
+          };
+        }
+      };
+    }
+  }
+
+  /**
+   * The maps returned by the sorted views, such as {@link
+   * #getPropertiesWithPrefix(String)}. The keys of the view are the keys of
+   * the properties with the namespace removed, and the properties in it are
+   * those from the lowest key, inclusive, to the highest, exclusive. Every
+   * read goes through the current index, so the view survives loads.
+   */
+  private final class Range extends AbstractMap<String, String> implements SortedMap<String, String> {
+
+    private final String namespace;
+    private final String from;
+    private final String to;
+
+    Range(String namespace, String from, String to) {
+      this.namespace = namespace;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    public int size() {
+      return sorted().size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return sorted().isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return get(key) != null;
+    }
+
+    @Override
+    public String get(Object key) {
+      if (!(key instanceof String))
+        return null;
+      final String full = this.namespace + key;
+      return contains(full) ? JEasyProperties.this.properties.get(full) : null;
+    }
+
+    @Override
+    public String put(String key, String value) {
+      final String full = this.namespace + key;
+      if (!contains(full))
+        throw new IllegalArgumentException("Key out of range: " + key);
+      final String output = JEasyProperties.this.properties.get(full);
+      setProperty(full, value);
+      return output;
+    }
+
+    @Override
+    public String remove(Object key) {
+      final String output = get(key);
+      if (output != null)
+        write(this.namespace + key, null);
+      return output;
+    }
+
+    @Override
+    public Comparator<? super String> comparator() {
+      return null;
+    }
+
+    @Override
+    public SortedMap<String, String> subMap(String fromKey, String toKey) {
+      if (fromKey.compareTo(toKey) > 0)
+        throw new IllegalArgumentException("fromKey is greater than toKey: " + fromKey + ", " + toKey);
+      return narrow(fromKey, toKey);
+    }
+
+    @Override
+    public SortedMap<String, String> headMap(String toKey) {
+      return narrow(null, toKey);
+    }
+
+    @Override
+    public SortedMap<String, String> tailMap(String fromKey) {
+      return narrow(fromKey, null);
+    }
+
+    @Override
+    public String firstKey() {
+      return sorted().firstKey().substring(this.namespace.length());
+    }
+
+    @Override
+    public String lastKey() {
+      return sorted().lastKey().substring(this.namespace.length());
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+      return new AbstractSet<Map.Entry<String, String>>() {
+        @Override
+        public int size() {
+          return Range.this.size();
+        }
+
+        @Override
+        public Iterator<Map.Entry<String, String>> iterator() {
+          final Iterator<Map.Entry<String, String>> iterator = sorted().entrySet().iterator();
+          return new Iterator<Map.Entry<String, String>>() {
+            private Map.Entry<String, String> last;
+
+            @Override
+            public boolean hasNext() {
+              return iterator.hasNext();
+            }
+
+            @Override
+            public Map.Entry<String, String> next() {
+              this.last = iterator.next();
+              return new AbstractMap.SimpleImmutableEntry<>(
+                  this.last.getKey().substring(Range.this.namespace.length()), this.last.getValue());
+            }
+
+            @Override
+            public void remove() {
+              if (this.last == null)
+                throw new IllegalStateException();
+              write(this.last.getKey(), null);
+              this.last = null;
+            }
+          };
+        }
+      };
+    }
+
+    /**
+     * Gets the part of the current index in this view.
+     */
+    private NavigableMap<String, String> sorted() {
+      final ConcurrentSkipListMap<String, String> index = index();
+      if (this.from == null)
+        return this.to == null ? index : index.headMap(this.to, false);
+      return this.to == null ? index.tailMap(this.from, true) : index.subMap(this.from, true, this.to, false);
+    }
+
+    private boolean contains(String key) {
+      return (this.from == null || key.compareTo(this.from) >= 0)
+          && (this.to == null || key.compareTo(this.to) < 0);
+    }
+
+    /**
+     * Gets a view of part of this view, as the sub map methods of {@link
+     * SortedMap} do.
+     *
+     * @param fromKey
+     *     The lowest key, or null to keep the lowest key of this view.
+     * @param toKey
+     *     The key after the highest key, or null to keep the one of this view.
+     */
+    private Range narrow(String fromKey, String toKey) {
+      final String from = fromKey == null ? this.from : this.namespace + fromKey;
+      final String to = toKey == null ? this.to : this.namespace + toKey;
+      if (fromKey != null && !contains(from))
+        throw new IllegalArgumentException("fromKey out of range: " + fromKey);
+      if (toKey != null && ((this.from != null && to.compareTo(this.from) < 0)
+          || (this.to != null && to.compareTo(this.to) > 0)))
+        throw new IllegalArgumentException("toKey out of range: " + toKey);
+      return new Range(this.namespace, from, to);
     }
   }
 }
@@ -0,0 +1,455 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.lordcrekit.JEasy.util;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * Persists a {@link JEasyProperties} by appending every change to a journal
+ * next to a base properties file, as started by {@link
+ * JEasyProperties#openJournal(Path)}. Saving a change costs one small record,
+ * however many properties there are. Replacing every property, such as by a
+ * load, appends a record that clears the properties followed by a record for
+ * each new property.
+ * <p>
+ * Records are queued while the changed key is locked, so that they are in the
+ * same order as the changes, and appended by the changing thread once it no
+ * longer holds any lock, so other threads never wait for the journal to be
+ * written.
+ * <p>
+ * Once the journal grows past the compaction threshold, it is set aside and a
+ * new one is started, then the base file is rewritten from a snapshot of the
+ * properties on a background thread and the old journal deleted. Records are
+ * checked with a CRC, so a record torn by a crash is dropped, together with
+ * anything after it, the next time the journal is opened.
+ * <p>
+ * If a record can not be appended, the change is still made, but the method
+ * that made it throws an {@link UncheckedIOException}. The record stays queued
+ * and is appended with the next change.
+ *
+ * @author William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu)
+ */
+public final class Journal implements Closeable {
+
+  private static final byte SET = 1;
+  private static final byte REMOVE = 2;
+  private static final byte CLEAR = 3;
+
+  /**
+   * Queued when every property was replaced. Compared by identity.
+   */
+  private static final ByteBuffer REPLACED = ByteBuffer.allocate(0);
+
+  private final JEasyProperties properties;
+  private final Path base;
+  private final Path journal;
+  private final Path oldJournal;
+  private final JEasyProperties.Listener listener;
+  private final AtomicBoolean compacting;
+  private final Queue<ByteBuffer> pending;
+  private FileChannel channel;
+  private Path current;
+  private long size;
+  private volatile long compactionThreshold;
+  private volatile boolean sync;
+  private volatile IOException failure;
+  private volatile boolean closed;
+
+  private Journal(JEasyProperties properties, Path base, long size) throws IOException {
+    this.properties = properties;
+    this.base = base;
+    this.journal = journalOf(base);
+    this.oldJournal = base.resolveSibling(base.getFileName() + ".journal.old");
+    this.listener = new JEasyProperties.Listener() {
+      @Override
+      public void changed(String key, String value) {
+        queue(key, value);
+      }
+
+      @Override
+      public void written(String key) {
+        flush();
+      }
+    };
+    this.compacting = new AtomicBoolean();
+    this.pending = new ConcurrentLinkedQueue<>();
+    this.compactionThreshold = 4 * 1024 * 1024;
+    this.channel = FileChannel.open(this.journal, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    this.current = this.journal;
+    // Drops a record torn by a crash, so new records follow the last good one.
+    this.channel.truncate(size);
+    this.channel.position(size);
+    this.size = size;
+  }
+
+  /**
+   * Loads the base file and replays the journal into the properties, then
+   * starts appending changes.
+   *
+   * @param properties
+   *     The properties to persist.
+   * @param base
+   *     The base properties file.
+   * @return The journal.
+   * @throws IOException
+   *     If the files could not be read, or the journal could not be opened.
+   */
+  static Journal open(JEasyProperties properties, Path base) throws IOException {
+    final ConcurrentHashMap<String, String> loaded = new ConcurrentHashMap<>();
+    try {
+      JEasyProperties.parse(base, loaded::put);
+    } catch (NoSuchFileException ex) {
+      // Nothing has been compacted yet.
+    }
+    replay(base.resolveSibling(base.getFileName() + ".journal.old"), loaded);
+    final long size = replay(journalOf(base), loaded);
+
+    properties.replace(loaded);
+    final Journal output = new Journal(properties, base, size);
+    properties.addListener(output.listener);
+    if (Files.exists(output.oldJournal))
+      output.compact();
+    return output;
+  }
+
+  /**
+   * Gets the journal size at which the journal is folded into the base file.
+   *
+   * @return The compaction threshold in bytes.
+   */
+  public long getCompactionThreshold() {
+    return this.compactionThreshold;
+  }
+
+  /**
+   * Sets the journal size at which the journal is folded into the base file.
+   * Defaults to 4 MB.
+   *
+   * @param compactionThreshold
+   *     The compaction threshold in bytes.
+   * @return Pointer back to this object.
+   * @throws IllegalArgumentException
+   *     If compactionThreshold is less than 1.
+   */
+  public Journal setCompactionThreshold(long compactionThreshold) {
+    if (compactionThreshold < 1)
+      throw new IllegalArgumentException("Compaction threshold must be at least 1: " + compactionThreshold);
+    this.compactionThreshold = compactionThreshold;
+    return this;
+  }
+
+  /**
+   * Sets if every record is forced to the storage device before the method
+   * that made the change returns. This makes every change survive a power
+   * failure, at the cost of waiting for the device on every change. Defaults
+   * to false.
+   *
+   * @param sync
+   *     True to force every record to the device.
+   * @return Pointer back to this object.
+   */
+  public Journal setSync(boolean sync) {
+    this.sync = sync;
+    return this;
+  }
+
+  /**
+   * Gets why the last compaction failed. The journals it was folding are kept,
+   * and compaction is tried again once the journal grows past the threshold.
+   *
+   * @return The failure, or null if the last compaction succeeded.
+   */
+  public IOException getFailure() {
+    return this.failure;
+  }
+
+  /**
+   * Appends every queued record, then stops appending changes. A compaction
+   * that is running still completes.
+   *
+   * @throws IOException
+   *     If the queued records could not be appended, or the journal could not
+   *     be closed.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (this.closed)
+      return;
+    this.closed = true;
+    this.properties.removeListener(this.listener);
+    try {
+      append();
+    } finally {
+      this.channel.close();
+    }
+  }
+
+  private static Path journalOf(Path base) {
+    return base.resolveSibling(base.getFileName() + ".journal");
+  }
+
+  /**
+   * Queues the record of a change. Run while the changed key is locked, so it
+   * does no I/O.
+   */
+  private void queue(String key, String value) {
+    if (this.closed)
+      return;
+    if (key == null)
+      this.pending.add(REPLACED);
+    else
+      this.pending.add(encode(value == null ? REMOVE : SET, key, value));
+  }
+
+  /**
+   * Appends every queued record, including the one of the change that called
+   * this, unless another thread already has.
+   */
+  private synchronized void flush() {
+    if (this.closed)
+      return;
+    try {
+      append();
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    compactIfFull();
+  }
+
+  /**
+   * Appends every queued record in order. A record is only taken off the
+   * queue once it is written; if one fails, whatever part of it was written is
+   * cut off, so it can be written again whole.
+   */
+  private synchronized void append() throws IOException {
+    boolean appended = false;
+    try {
+      for (ByteBuffer next; (next = this.pending.peek()) != null; ) {
+        this.size += next == REPLACED ? appendReplace() : write(next.duplicate());
+        this.pending.remove();
+        appended = true;
+      }
+      if (appended && this.sync)
+        this.channel.force(false);
+    } catch (IOException ex) {
+      try {
+        this.channel.truncate(this.size);
+        this.channel.position(this.size);
+      } catch (IOException suppressed) {
+        ex.addSuppressed(suppressed);
+      }
+      throw ex;
+    }
+  }
+
+  /**
+   * Appends a clear record and a record for each property. The properties may
+   * already include changes queued after the replace, which is harmless, since
+   * those records set the same values again.
+   *
+   * @return The number of bytes appended.
+   */
+  private long appendReplace() throws IOException {
+    final ByteBuffer chunk = ByteBuffer.allocate(64 * 1024);
+    long output = 0;
+    chunk.put(encode(CLEAR, null, null));
+    for (Map.Entry<String, String> i : this.properties.getProperties().entrySet()) {
+      final ByteBuffer record = encode(SET, i.getKey(), i.getValue());
+      if (record.remaining() > chunk.remaining()) {
+        chunk.flip();
+        output += write(chunk);
+        chunk.clear();
+      }
+      if (record.remaining() > chunk.remaining())
+        output += write(record);
+      else
+        chunk.put(record);
+    }
+    chunk.flip();
+    return output + write(chunk);
+  }
+
+  private long write(ByteBuffer buffer) throws IOException {
+    final long output = buffer.remaining();
+    while (buffer.hasRemaining())
+      this.channel.write(buffer);
+    return output;
+  }
+
+  private synchronized void compactIfFull() {
+    if (!this.closed && this.size >= this.compactionThreshold)
+      compact();
+  }
+
+  /**
+   * Sets the journal aside and starts a new one, then rewrites the base file
+   * in the background. A journal left from a failed compaction is not replaced;
+   * it stays until a compaction succeeds.
+   */
+  private synchronized void compact() {
+    if (!this.compacting.compareAndSet(false, true))
+      return;
+    try {
+      // The journal is moved while it is still open, and only replaced once
+      // the new one is open, so a failure leaves it appending as before.
+      if (!Files.isRegularFile(this.oldJournal)) {
+        Files.move(this.journal, this.oldJournal, StandardCopyOption.ATOMIC_MOVE);
+        this.current = this.oldJournal;
+      }
+      if (this.current.equals(this.oldJournal)) {
+        final FileChannel previous = this.channel;
+        this.channel = FileChannel.open(this.journal, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        this.current = this.journal;
+        this.size = 0;
+        try {
+          previous.close();
+        } catch (IOException ex) {
+          // Every record in it is already written.
+        }
+      }
+    } catch (IOException ex) {
+      // The change that triggered the compaction is already in the journal.
+      this.failure = ex;
+      this.compacting.set(false);
+      return;
+    }
+
+    Compactor.INSTANCE.execute(() -> {
+      try {
+        // The snapshot is taken after the set aside journal stopped growing, so
+        // it holds every change in it.
+        this.properties.save(this.base, null, this.sync);
+        Files.deleteIfExists(this.oldJournal);
+        this.failure = null;
+      } catch (IOException ex) {
+        this.failure = ex;
+        this.compacting.set(false);
+        return;
+      }
+      this.compacting.set(false);
+      // The new journal may have filled up while this compaction ran.
+      compactIfFull();
+    });
+  }
+
+  /**
+   * Applies every intact record of a journal, stopping at the first that is
+   * torn or corrupt.
+   *
+   * @return The length of the intact records.
+   */
+  private static long replay(Path journal, Map<String, String> properties) throws IOException {
+    long output = 0;
+    final CRC32 crc = new CRC32();
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journal)))) {
+      final long size = Files.size(journal);
+      while (true) {
+        final int length = in.readInt();
+        if (length < 1 || length > size - output - 8)
+          break;
+        final byte[] payload = new byte[length];
+        in.readFully(payload);
+        crc.reset();
+        crc.update(payload);
+        if (in.readInt() != (int) crc.getValue())
+          break;
+
+        final DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+        final byte op = record.readByte();
+        if (op == CLEAR)
+          properties.clear();
+        else if (op == SET)
+          properties.put(readString(record), readString(record));
+        else
+          properties.remove(readString(record));
+        output += length + 8;
+      }
+    } catch (NoSuchFileException | EOFException ex) {
+      // A missing journal has no records, and a torn one ends here.
+    }
+    return output;
+  }
+
+  /**
+   * Encodes a record: its length, the operation, the key and value if there
+   * are any, and the CRC of everything but the length.
+   */
+  private static ByteBuffer encode(byte op, String key, String value) {
+    final byte[] keyBytes = key == null ? null : key.getBytes(StandardCharsets.UTF_8);
+    final byte[] valueBytes = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    final int length = 1 + (keyBytes == null ? 0 : 4 + keyBytes.length)
+        + (valueBytes == null ? 0 : 4 + valueBytes.length);
+    final ByteBuffer output = ByteBuffer.allocate(length + 8);
+    output.putInt(length).put(op);
+    if (keyBytes != null)
+      output.putInt(keyBytes.length).put(keyBytes);
+    if (valueBytes != null)
+      output.putInt(valueBytes.length).put(valueBytes);
+    final CRC32 crc = new CRC32();
+    crc.update(output.array(), 4, length);
+    output.putInt((int) crc.getValue());
+    output.flip();
+    return output;
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    final byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * The thread every compaction runs on.
+   */
+  private static final class Compactor {
+
+    static final ExecutorService INSTANCE = Executors.newSingleThreadExecutor((Runnable r) -> {
+      final Thread output = new Thread(r, "JEasyProperties journal compaction");
+      output.setDaemon(true);
+      return output;
+    });
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.lordcrekit.JEasy.util;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A read-only view that looks keys up in several {@link JEasyProperties} in
+ * order, such as host overrides, then a site file, then built-in defaults. The
+ * first layer that has a key gives its value.
+ * <p>
+ * Resolved keys are kept in a single flattened table, so reading a key that was
+ * read before is one lookup however many layers there are. Keys no layer has
+ * are not kept, so reading many different missing keys does not grow the table;
+ * each such read looks in every layer. Changing a key in any layer forgets only
+ * that key, and loading or reloading a layer forgets every key. The layers can
+ * be changed from any thread at any time; a read never returns a value that was
+ * replaced before the read began.
+ * <p>
+ * The view listens to its layers until it is closed, so close it once it is no
+ * longer used.
+ *
+ * @author William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu)
+ */
+public final class LayeredProperties implements Closeable {
+
+  private final List<JEasyProperties> layers;
+  private final ConcurrentHashMap<String, String> flattened;
+  private final AtomicLong version;
+  private final JEasyProperties.Listener listener;
+
+  /**
+   * Creates a view of the given layers.
+   *
+   * @param layers
+   *     The layers, in the order keys are looked up in.
+   * @throws NullPointerException
+   *     If a layer is null.
+   */
+  public LayeredProperties(JEasyProperties... layers) {
+    for (JEasyProperties i : layers)
+      if (i == null)
+        throw new NullPointerException("layer");
+    this.layers = Collections.unmodifiableList(Arrays.asList(layers.clone()));
+    this.flattened = new ConcurrentHashMap<>();
+    this.version = new AtomicLong();
+    this.listener = new JEasyProperties.Listener() {
+      @Override
+      public void changed(String key, String value) {
+        // The change can not be seen yet, see written.
+      }
+
+      @Override
+      public void written(String key) {
+        invalidate(key);
+      }
+    };
+    for (JEasyProperties i : this.layers)
+      i.addListener(this.listener);
+  }
+
+  /**
+   * Gets the layers, in the order keys are looked up in.
+   *
+   * @return The layers.
+   */
+  public List<JEasyProperties> getLayers() {
+    return this.layers;
+  }
+
+  /**
+   * Gets the value of the given key from the first layer that has it, or null
+   * if no layer has it.
+   *
+   * @param key
+   *     The key to look up.
+   * @return The value.
+   */
+  public String getProperty(String key) {
+    final String output = this.flattened.get(key);
+    return output == null ? resolve(key) : output;
+  }
+
+  /**
+   * Gets the value of the given key from the first layer that has it, or the
+   * given default value if no layer has it.
+   *
+   * @param key
+   *     The key to look up.
+   * @param defaultValue
+   *     The value to return if no layer has the key.
+   * @return The value.
+   */
+  public String getProperty(String key, String defaultValue) {
+    final String output = getProperty(key);
+    return output == null ? defaultValue : output;
+  }
+
+  /**
+   * Checks if any layer has the given key.
+   *
+   * @param key
+   *     The key to look up.
+   * @return True if a layer has the key.
+   */
+  public boolean containsKey(String key) {
+    return getProperty(key) != null;
+  }
+
+  /**
+   * Stops listening to the layers. The view must not be used afterwards.
+   */
+  @Override
+  public void close() {
+    for (JEasyProperties i : this.layers)
+      i.removeListener(this.listener);
+    this.flattened.clear();
+  }
+
+  /**
+   * Looks a key up in every layer and caches the result if a layer has it.
+   */
+  private String resolve(String key) {
+    final long version = this.version.get();
+    String output = null;
+    for (JEasyProperties i : this.layers) {
+      output = i.getProperty(key);
+      if (output != null)
+        break;
+    }
+    if (output == null)
+      return null;
+    this.flattened.put(key, output);
+    // A change made during the lookup may have been forgotten before the put,
+    // so the result is dropped; a change made after this check is forgotten
+    // after the put.
+    if (this.version.get() != version)
+      this.flattened.remove(key, output);
+    return output;
+  }
+
+  /**
+   * Forgets a key, or every key if it is null. The version is changed first,
+   * so that a lookup racing with this either sees it or is forgotten by it.
+   */
+  private void invalidate(String key) {
+    this.version.incrementAndGet();
+    if (key == null)
+      this.flattened.clear();
+    else
+      this.flattened.remove(key);
+  }
+}
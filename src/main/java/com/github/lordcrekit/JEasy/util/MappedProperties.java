@@ -0,0 +1,440 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.lordcrekit.JEasy.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A read-only view of a {@link JEasyProperties} file that is memory mapped
+ * instead of loaded. Opening the file only builds an index of where each key
+ * and value is; a value is decoded the first time it is asked for. Startup
+ * time and heap use therefore depend on the number of lines and on the keys
+ * that are read, not on the length of the values.
+ * <p>
+ * The file is read as UTF-8, with the same syntax as {@link
+ * JEasyProperties#load(Path)}; if a key appears more than once the last value
+ * wins. A file saved by {@link JEasyProperties#saveBinary(Path)} is looked up
+ * in place instead, through the hash table stored in it, so opening it only
+ * verifies its checksum. Files of 2 GB or more are not supported. The file
+ * must not be changed while it is mapped. Safe to use from several threads at
+ * once.
+ *
+ * @author William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu)
+ */
+public final class MappedProperties {
+
+  private final ByteBuffer buffer;
+  private final Index index;
+  private final String[] values;
+
+  private MappedProperties(ByteBuffer buffer, Index index) {
+    this.buffer = buffer;
+    this.index = index;
+    this.values = new String[index.capacity()];
+  }
+
+  /**
+   * Maps a properties file and indexes its keys.
+   *
+   * @param path
+   *     The file to map.
+   * @return The mapped properties.
+   * @throws IOException
+   *     If the file could not be mapped, is 2 GB or larger, or is a corrupt
+   *     binary file.
+   */
+  public static MappedProperties open(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      final long length = channel.size();
+      if (length > Integer.MAX_VALUE)
+        throw new IOException("File is too large to map: " + path);
+      final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+      if (!BinaryProperties.isBinary(buffer))
+        return new MappedProperties(buffer, new TextIndex(buffer));
+      BinaryProperties.verify(buffer);
+      return new MappedProperties(buffer, new BinaryIndex(buffer));
+    }
+  }
+
+  /**
+   * Gets the value associated with the given key, or null if the key does not
+   * exist.
+   *
+   * @param key
+   *     The key to look up.
+   * @return The value.
+   */
+  public String getProperty(String key) {
+    final int entry = this.index.find(key.getBytes(StandardCharsets.UTF_8));
+    if (entry == -1)
+      return null;
+    // Racing threads decode equal Strings, so it does not matter which is kept.
+    final String output = getValue(entry);
+    this.values[entry] = output;
+    return output;
+  }
+
+  /**
+   * Gets the value associated with the given key, or the given default value
+   * if the key does not exist.
+   *
+   * @param key
+   *     The key to look up.
+   * @param defaultValue
+   *     The value to return if the key does not exist.
+   * @return The value.
+   */
+  public String getProperty(String key, String defaultValue) {
+    final String output = getProperty(key);
+    return output == null ? defaultValue : output;
+  }
+
+  /**
+   * Checks if the given key exists, without decoding its value.
+   *
+   * @param key
+   *     The key to look up.
+   * @return True if the key exists.
+   */
+  public boolean containsKey(String key) {
+    return this.index.find(key.getBytes(StandardCharsets.UTF_8)) != -1;
+  }
+
+  /**
+   * Gets the number of distinct keys.
+   *
+   * @return The number of keys.
+   */
+  public int size() {
+    return this.index.size;
+  }
+
+  /**
+   * Loads every property into a modifiable {@link JEasyProperties}.
+   *
+   * @return The properties.
+   */
+  public JEasyProperties toJEasyProperties() {
+    final JEasyProperties output = new JEasyProperties();
+    for (int i = 0; i < this.values.length; i++)
+      if (this.index.exists(i)) {
+        final int start = this.index.keyStart(i);
+        output.setProperty(decode(start, this.index.keyEnd(i) - start), getValue(i));
+      }
+    return output;
+  }
+
+  /**
+   * Gets the value of an entry, decoding it if it has not been decoded yet.
+   */
+  private String getValue(int entry) {
+    final String output = this.values[entry];
+    if (output != null)
+      return output;
+    final int start = this.index.valueStart(entry);
+    return decode(start, this.index.valueEnd(entry) - start);
+  }
+
+  private String decode(int start, int length) {
+    final byte[] bytes = new byte[length];
+    final ByteBuffer view = this.buffer.duplicate();
+    view.position(start);
+    view.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Spreads similar keys, which have similar string hashes, over the table.
+   */
+  private static int mix(int hash) {
+    final int output = hash * 0x9E3779B9;
+    return output ^ (output >>> 16);
+  }
+
+  /**
+   * Finds where each key and value of a mapped file is. Entries are numbered
+   * from 0 to the capacity, and some numbers may not be used.
+   */
+  private abstract static class Index {
+
+    final ByteBuffer buffer;
+    int size;
+
+    Index(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    abstract int capacity();
+
+    abstract boolean exists(int entry);
+
+    /**
+     * Finds the entry of a key.
+     *
+     * @param key
+     *     The UTF-8 key.
+     * @return The entry, or -1 if the key does not exist.
+     */
+    abstract int find(byte[] key);
+
+    abstract int keyStart(int entry);
+
+    abstract int keyEnd(int entry);
+
+    abstract int valueStart(int entry);
+
+    abstract int valueEnd(int entry);
+
+    boolean keyEquals(int entry, byte[] key) {
+      final int start = keyStart(entry);
+      if (keyEnd(entry) - start != key.length)
+        return false;
+      for (int i = 0; i < key.length; i++)
+        if (this.buffer.get(start + i) != key[i])
+          return false;
+      return true;
+    }
+  }
+
+  /**
+   * Indexes a text file in one pass. The table is an open addressing hash
+   * table of entry numbers plus one, so that 0 is empty.
+   */
+  private static final class TextIndex extends Index {
+
+    // Per entry: where the key starts, where its '=' is, and where the value ends.
+    private int[] offsets = new int[3 * 1024];
+    private int[] hashes = new int[1024];
+    private int[] table = new int[2048];
+
+    TextIndex(ByteBuffer buffer) {
+      super(buffer);
+      final int length = buffer.limit();
+      // Scanning a heap copy of each block is much faster than reading the
+      // mapped buffer one byte at a time.
+      final ByteBuffer view = buffer.duplicate();
+      final byte[] block = new byte[64 * 1024];
+      int blockStart = 0;
+      int blockEnd = 0;
+      int start = 0;
+      int equals = -1;
+      int end = -1;
+      int hash = 0;
+      for (int i = 0; i < length; i++) {
+        if (i == blockEnd) {
+          blockStart = i;
+          blockEnd = Math.min(length, i + block.length);
+          view.get(block, 0, blockEnd - blockStart);
+        }
+        final byte b = block[i - blockStart];
+        if (b == '\n' || b == '\r') {
+          if (equals != -1)
+            add(start, equals, end == -1 ? i : end, hash);
+          start = i + 1;
+          equals = -1;
+          end = -1;
+          hash = 0;
+        } else if (end == -1) {
+          if (b == '#')
+            end = i;
+          else if (equals == -1)
+            if (b == '=')
+              equals = i;
+            else
+              hash = hash * 31 + b;
+        }
+      }
+      if (equals != -1)
+        add(start, equals, end == -1 ? length : end, hash);
+    }
+
+    @Override
+    int capacity() {
+      return this.size;
+    }
+
+    @Override
+    boolean exists(int entry) {
+      return true;
+    }
+
+    @Override
+    int find(byte[] key) {
+      int hash = 0;
+      for (byte i : key)
+        hash = hash * 31 + i;
+      final int mask = this.table.length - 1;
+      for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+        final int entry = this.table[slot] - 1;
+        if (entry == -1)
+          return -1;
+        if (this.hashes[entry] == hash && keyEquals(entry, key))
+          return entry;
+      }
+    }
+
+    @Override
+    int keyStart(int entry) {
+      return this.offsets[entry * 3];
+    }
+
+    @Override
+    int keyEnd(int entry) {
+      return this.offsets[entry * 3 + 1];
+    }
+
+    @Override
+    int valueStart(int entry) {
+      return this.offsets[entry * 3 + 1] + 1;
+    }
+
+    @Override
+    int valueEnd(int entry) {
+      return this.offsets[entry * 3 + 2];
+    }
+
+    private void add(int start, int equals, int end, int hash) {
+      final int mask = this.table.length - 1;
+      for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+        final int entry = this.table[slot] - 1;
+        if (entry == -1)
+          break;
+        if (this.hashes[entry] == hash && sameKey(entry, start, equals)) {
+          // A later line replaces the value of an earlier one.
+          this.offsets[entry * 3 + 1] = equals;
+          this.offsets[entry * 3 + 2] = end;
+          this.offsets[entry * 3] = start;
+          return;
+        }
+      }
+
+      if (this.size == this.hashes.length) {
+        this.hashes = Arrays.copyOf(this.hashes, this.size * 2);
+        this.offsets = Arrays.copyOf(this.offsets, this.size * 6);
+      }
+      this.offsets[this.size * 3] = start;
+      this.offsets[this.size * 3 + 1] = equals;
+      this.offsets[this.size * 3 + 2] = end;
+      this.hashes[this.size] = hash;
+      this.size++;
+      if (this.size * 2 > this.table.length)
+        rehash(this.table.length * 2);
+      else
+        insert(this.size - 1);
+    }
+
+    private boolean sameKey(int entry, int start, int equals) {
+      final int other = this.offsets[entry * 3];
+      if (this.offsets[entry * 3 + 1] - other != equals - start)
+        return false;
+      for (int i = 0; i < equals - start; i++)
+        if (this.buffer.get(other + i) != this.buffer.get(start + i))
+          return false;
+      return true;
+    }
+
+    private void rehash(int capacity) {
+      this.table = new int[capacity];
+      for (int i = 0; i < this.size; i++)
+        insert(i);
+    }
+
+    private void insert(int entry) {
+      final int mask = this.table.length - 1;
+      int slot = mix(this.hashes[entry]) & mask;
+      while (this.table[slot] != 0)
+        slot = (slot + 1) & mask;
+      this.table[slot] = entry + 1;
+    }
+  }
+
+  /**
+   * Looks keys up in the hash table of a binary file, as laid out by {@link
+   * BinaryProperties}. Each slot of the table is an entry.
+   */
+  private static final class BinaryIndex extends Index {
+
+    private final int slots;
+
+    BinaryIndex(ByteBuffer buffer) {
+      super(buffer);
+      this.size = buffer.getInt(8);
+      this.slots = buffer.getInt(12);
+    }
+
+    @Override
+    int capacity() {
+      return this.slots;
+    }
+
+    @Override
+    boolean exists(int entry) {
+      return offset(entry) != 0;
+    }
+
+    @Override
+    int find(byte[] key) {
+      final int hash = BinaryProperties.hash(key, 0, key.length);
+      final int mask = this.slots - 1;
+      for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+        if (offset(slot) == 0)
+          return -1;
+        if (this.buffer.getInt(BinaryProperties.HEADER + slot * BinaryProperties.SLOT) == hash
+            && keyEquals(slot, key))
+          return slot;
+      }
+    }
+
+    @Override
+    int keyStart(int entry) {
+      return offset(entry) + 4;
+    }
+
+    @Override
+    int keyEnd(int entry) {
+      return keyStart(entry) + this.buffer.getInt(offset(entry));
+    }
+
+    @Override
+    int valueStart(int entry) {
+      return keyEnd(entry) + 4;
+    }
+
+    @Override
+    int valueEnd(int entry) {
+      return valueStart(entry) + this.buffer.getInt(keyEnd(entry));
+    }
+
+    private int offset(int entry) {
+      return this.buffer.getInt(BinaryProperties.HEADER + entry * BinaryProperties.SLOT + 4);
+    }
+  }
+}
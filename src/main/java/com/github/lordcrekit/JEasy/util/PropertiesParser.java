@@ -0,0 +1,128 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.lordcrekit.JEasy.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * Parses the text format of {@link JEasyProperties} in a single pass over a
+ * reusable buffer. Each line is <code>key=value</code>; everything from the
+ * first <code>#</code> of a line is a comment, the key ends at the first
+ * <code>=</code>, and lines without one are ignored. Lines end with
+ * <code>\n</code>, <code>\r</code> or <code>\r\n</code>.
+ * <p>
+ * Keys and values are created straight from the read buffer, so the only
+ * objects created per line are the key and value Strings. Only a line that
+ * spans two reads is copied, into a carry buffer that is reused.
+ *
+ * @author William A. Norman (LordCrekit@gmail.com, normanwi@msu.edu)
+ */
+final class PropertiesParser {
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private final BiConsumer<String, String> sink;
+  private char[] carry;
+  private int carried;
+  private int equals;
+
+  private PropertiesParser(BiConsumer<String, String> sink) {
+    this.sink = sink;
+    this.carry = new char[128];
+    this.equals = -1;
+  }
+
+  /**
+   * Reads properties until the end of the reader.
+   *
+   * @param reader
+   *     The reader to parse. Not closed.
+   * @param sink
+   *     Receives every key and value, in the order they appear.
+   * @throws IOException
+   *     If the reader failed.
+   */
+  static void parse(Reader reader, BiConsumer<String, String> sink) throws IOException {
+    new PropertiesParser(sink).parse(reader);
+  }
+
+  private void parse(Reader reader) throws IOException {
+    final char[] buffer = new char[BUFFER_SIZE];
+    boolean comment = false;
+    int read;
+    while ((read = reader.read(buffer)) != -1) {
+      // The current line starts at start, and its text in this buffer ends at
+      // end once a comment has started.
+      int start = 0;
+      int end = 0;
+      for (int i = 0; i < read; i++) {
+        final char c = buffer[i];
+        // The \n of a \r\n ends an empty line, which is ignored like any other.
+        if (c == '\n' || c == '\r') {
+          endLine(buffer, start, comment ? end : i);
+          comment = false;
+          start = i + 1;
+        } else if (!comment) {
+          if (c == '#') {
+            comment = true;
+            end = i;
+          } else if (c == '=' && this.equals == -1) {
+            this.equals = this.carried + i - start;
+          }
+        }
+      }
+      append(buffer, start, comment ? end : read);
+    }
+    endLine(buffer, 0, 0);
+  }
+
+  private void endLine(char[] buffer, int start, int end) {
+    if (this.equals != -1) {
+      final char[] line;
+      if (this.carried == 0) {
+        line = buffer;
+      } else {
+        append(buffer, start, end);
+        line = this.carry;
+        end = this.carried;
+        start = 0;
+      }
+      final int split = start + this.equals;
+      this.sink.accept(new String(line, start, this.equals), new String(line, split + 1, end - split - 1));
+    }
+    this.carried = 0;
+    this.equals = -1;
+  }
+
+  private void append(char[] buffer, int start, int end) {
+    final int length = end - start;
+    if (this.carried + length > this.carry.length)
+      this.carry = Arrays.copyOf(this.carry, Math.max(this.carry.length * 2, this.carried + length));
+    System.arraycopy(buffer, start, this.carry, this.carried, length);
+    this.carried += length;
+  }
+}
@@ -23,15 +23,39 @@
  */
 package com.github.lordcrekit.JEasy.io.files;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemLoopException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -196,6 +220,7 @@ public class JEasyFilesTest {
 		}
 	}
 
+	@Test
 	public void testIsFileStructureIdentical_Custom() {
 		System.out.println("isFileStructureIdentical CUSTOM");
 		Path dir1 = null;
@@ -229,4 +254,845 @@ public class JEasyFilesTest {
 			cleanupFiles(dir1, dir2);
 		}
 	}
+
+	/**
+	 * Test of copyDirectory method with several copying threads, of class
+	 * JEasyFiles.
+	 */
+	@Test
+	public void testCopyDirectory_Parallel() {
+		System.out.println("copyDirectory PARALLEL");
+		Path dir = null;
+		try {
+			dir = Files.createTempDirectory(TEST_DIRECTORY_PREFIX);
+			for ( Entry<String, Path> e : createTestDirectories(dir).entrySet() ) {
+				System.out.println("\t" + e.getKey());
+				try {
+					Path olddir = e.getValue();
+					Path newdir = Paths.get(dir.toString(), "_COPIED", olddir.getFileName().toString());
+					JEasyFiles.copyDirectory(olddir, newdir, new CopyOptions().setParallelism(4));
+					assertEquals(true, JEasyFiles.isDirectoryStructureEqual(olddir, newdir));
+				} catch ( IOException ex ) {
+					fail(ex.getMessage());
+				}
+			}
+		} catch ( IOException ex ) {
+			fail(TEST_INTERNAL_FAILURE_MESSAGE);
+		} finally {
+			cleanupFiles(dir);
+		}
+	}
+
+	/**
+	 * Every file that fails to copy should be reported in one exception.
+	 */
+	@Test
+	public void testCopyDirectory_AggregatesFailures() {
+		System.out.println("copyDirectory FAILURES");
+		Path dir = null;
+		try {
+			dir = Files.createTempDirectory(TEST_DIRECTORY_PREFIX);
+			Path olddir = createTestDirectories(dir).get("nested dirs and files");
+			Path newdir = Paths.get(dir.toString(), "_COPIED");
+			JEasyFiles.copyDirectory(olddir, newdir, new CopyOptions().setParallelism(4));
+			try {
+				JEasyFiles.copyDirectory(olddir, newdir, new CopyOptions().setParallelism(4));
+				fail("Copying onto existing files should fail.");
+			} catch ( IOException ex ) {
+				assertEquals(8, ex.getSuppressed().length);
+			}
+		} catch ( IOException ex ) {
+			fail(TEST_INTERNAL_FAILURE_MESSAGE);
+		} finally {
+			cleanupFiles(dir);
+		}
+	}
+
+	/**
+	 * Every built in copy strategy should produce an identical tree, falling
+	 * back to a plain copy where it is not supported.
+	 */
+	@Test
+	public void testCopyDirectory_Strategies() {
+		System.out.println("copyDirectory STRATEGIES");
+		Map<String, CopyStrategy> strategies = new LinkedHashMap<>();
+		strategies.put("stream", CopyStrategies.STREAM);
+		strategies.put("transferTo", CopyStrategies.TRANSFER_TO);
+		strategies.put("hardlink", CopyStrategies.HARDLINK);
+		strategies.put("reflink", CopyStrategies.REFLINK);
+		strategies.put("reflink or hardlink", CopyStrategies.firstOf(CopyStrategies.REFLINK, CopyStrategies.HARDLINK));
+
+		Path dir = null;
+		try {
+			dir = Files.createTempDirectory(TEST_DIRECTORY_PREFIX);
+			Path olddir = createTestDirectories(dir).get("nested dirs and files");
+			Path file = Paths.get(olddir.toString(), "nested", "file0.txt");
+			Files.write(file, "some contents".getBytes(StandardCharsets.UTF_8));
+
+			for ( Entry<String, CopyStrategy> e : strategies.entrySet() ) {
+				System.out.println("\t" + e.getKey());
+				Path newdir = Paths.get(dir.toString(), "_COPIED", e.getKey());
+				JEasyFiles.copyDirectory(olddir, newdir, new CopyOptions().setStrategy(e.getValue()));
+				assertEquals(true, JEasyFiles.isDirectoryStructureEqual(olddir, newdir));
+				assertArrayEquals(Files.readAllBytes(file),
+						Files.readAllBytes(Paths.get(newdir.toString(), "nested", "file0.txt")));
+			}
+		} catch ( IOException ex ) {
+			fail(ex.getMessage());
+		} finally {
+			cleanupFiles(dir);
+		}
+	}
+
+	/**
+	 * Test of syncDirectory method, of class JEasyFiles.
+	 */
+	@Test
+	public void testSyncDirectory() {
+		System.out.println("syncDirectory");
+		Path dir = null;
+		try {
+			dir = Files.createTempDirectory(TEST_DIRECTORY_PREFIX);
+			Path olddir = createTestDirectories(dir).get("nested dirs and files");
+			Path newdir = Paths.get(dir.toString(), "_SYNCED");
+			Path changed = Paths.get(olddir.toString(), "nested", "file0.txt");
+			Path unchanged = Paths.get(newdir.toString(), "file0.txt");
+			Files.write(Paths.get(olddir.toString(), "file0.txt"), "original!".getBytes(StandardCharsets.UTF_8));
+			// A name close to the length limit leaves no room for a temp name built from it.
+			StringBuilder longName = new StringBuilder();
+			while ( longName.length() < 240 )
+				longName.append("long name ");
+			Files.write(Paths.get(olddir.toString(), longName.toString()), "long".getBytes(StandardCharsets.UTF_8));
+
+			for ( SyncOptions.ChangeDetection mode : SyncOptions.ChangeDetection.values() ) {
+				System.out.println("\t" + mode);
+				SyncOptions options = new SyncOptions().setChangeDetection(mode).setDeleteExtraneous(true);
+				JEasyFiles.syncDirectory(olddir, newdir, options);
+				assertEquals(true, JEasyFiles.isDirectoryStructureEqual(olddir, newdir));
+
+				// Syncing an up to date tree must not rewrite anything.
+				Path marker = Files.write(unchanged, "untouched".getBytes(StandardCharsets.UTF_8));
+				Files.setLastModifiedTime(marker, Files.getLastModifiedTime(Paths.get(olddir.toString(), "file0.txt")));
+				Files.write(changed, mode.name().getBytes(StandardCharsets.UTF_8));
+				Files.createFile(Paths.get(newdir.toString(), "extra.txt"));
+				Files.createDirectories(Paths.get(newdir.toString(), "extra", "dir"));
+				JEasyFiles.syncDirectory(olddir, newdir, options);
+
+				assertEquals(true, JEasyFiles.isDirectoryStructureEqual(olddir, newdir));
+				assertArrayEquals(Files.readAllBytes(changed),
+						Files.readAllBytes(Paths.get(newdir.toString(), "nested", "file0.txt")));
+				if ( mode == SyncOptions.ChangeDetection.SIZE_AND_MTIME )
+					assertEquals("untouched", new String(Files.readAllBytes(unchanged), StandardCharsets.UTF_8));
+				else
+					assertEquals("original!", new String(Files.readAllBytes(unchanged), StandardCharsets.UTF_8));
+			}
+		} catch ( IOException ex ) {
+			fail(ex.getMessage());
+		} finally {
+			cleanupFiles(dir);
+		}
+	}
+
+	/**
+	 * Test of deleteDirectory method with several deleting threads, of class
+	 * JEasyFiles.
+	 */
+	@Test
+	public void testDeleteDirectory_Parallel() {
+		System.out.println("deleteDirectory PARALLEL");
+		Path dir = null;
+		Path outside = null;
+		try {
+			dir = Files.createTempDirectory(TEST_DIRECTORY_PREFIX);
+			outside = Files.createTempDirectory(TEST_DIRECTORY_PREFIX);
+			Path kept = Files.createFile(Paths.get(outside.toString(), "kept.txt"));
+			for ( Entry<String, Path> e : createTestDirectories(dir).entrySet() ) {
+				System.out.println("\t" + e.getKey());
+				Path p = e.getValue();
+				try {
+					Files.createSymbolicLink(Paths.get(p.toString(), "link"), outside);
+				} catch ( UnsupportedOperationException ex ) {
+					// Links are only part of the test where they are supported.
+				}
+				JEasyFiles.deleteDirectory(p, 4);
+				assertEquals(false, Files.exists(p));
+				assertEquals(true, Files.exists(kept));
+			}
+		} catch ( IOException ex ) {
+			fail(ex.getMessage());
+		} finally {
+			cleanupFiles(dir, outside);
+		}
+	}
+
+	/**
+	 * Test of deleteDirectoryAsync method, of class JEasyFiles.
+	 */
+	@Test
+	public void testDeleteDirectoryAsync() {
+		System.out.println("deleteDirectoryAsync");
+		Path dir = null;
+		try {
+			dir = Files.createTempDirectory(TEST_DIRECTORY_PREFIX);
+			Path p = createTestDirectories(dir).get("deep nested with file");
+			CompletableFuture<Void> purge = JEasyFiles.deleteDirectoryAsync(p);
+			assertEquals(false, Files.exists(p));
+			purge.get(10, TimeUnit.SECONDS);
+			try ( Stream<Path> remaining = Files.list(dir) ) {
+				assertEquals(false, remaining.anyMatch((Path i) -> i.getFileName().toString().contains(".deleted-")));
+			}
+		} catch ( IOException | InterruptedException | ExecutionException | TimeoutException ex ) {
+			fail(ex.getMessage());
+		} finally {
+			cleanupFiles(dir);
+		}
+	}
+
+	/**
+	 * An entry that is a file in one tree and a directory in the other makes
+	 * the structures different.
+	 */
+	@Test
+	public void testIsFileStructureIdentical_FileVersusDirectory() {
+		System.out.println("isFileStructureIdentical FILE VS DIRECTORY");
+		Path dir1 = null;
+		Path dir2 = null;
+		try {
+			dir1 = Files.createTempDirectory(TEST_DIRECTORY_PREFIX);
+			dir2 = Files.createTempDirectory(TEST_DIRECTORY_PREFIX);
+			Files.createDirectories(Paths.get(dir1.toString(), "a", "same"));
+			Files.createDirectories(Paths.get(dir2.toString(), "a"));
+			Files.createFile(Paths.get(dir2.toString(), "a", "same"));
+			assertEquals(false, JEasyFiles.isDirectoryStructureEqual(dir1, dir2));
+			assertEquals(false, JEasyFiles.isDirectoryStructureEqual(dir2, dir1));
+		} catch ( IOException ex ) {
+			fail(TEST_INTERNAL_FAILURE_MESSAGE);
+		} finally {
+			cleanupFiles(dir1, dir2);
+		}
+	}
+
+	/**
+	 * Test of diffDirectories method, of class JEasyFiles.
+	 */
+	@Test
+	public void testDiffDirectories() {
+		System.out.println("diffDirectories");
+		Path dir = null;
+		try {
+			dir = Files.createTempDirectory(TEST_DIRECTORY_PREFIX);
+			Path olddir = createTestDirectories(dir).get("nested dirs and files");
+			Path newdir = Paths.get(dir.toString(), "_COPIED");
+			JEasyFiles.copyDirectory(olddir, newdir);
+			assertEquals(true, JEasyFiles.diffDirectories(olddir, newdir).isIdentical());
+
+			Files.write(Paths.get(newdir.toString(), "file0.txt"), "a".getBytes(StandardCharsets.UTF_8));
+			Files.write(Paths.get(olddir.toString(), "file1.txt"), "b".getBytes(StandardCharsets.UTF_8));
+			Files.write(Paths.get(newdir.toString(), "file1.txt"), "c".getBytes(StandardCharsets.UTF_8));
+			Files.delete(Paths.get(newdir.toString(), "nested", "file2.txt"));
+			Files.createFile(Paths.get(newdir.toString(), "added.txt"));
+
+			// Files modified just now are too recent to cache.
+			FileTime past = FileTime.fromMillis(System.currentTimeMillis() - 60 * 60 * 1000);
+			try ( Stream<Path> files = Stream.concat(Files.walk(olddir), Files.walk(newdir)) ) {
+				for ( Path f : (Iterable<Path>) files::iterator )
+					if ( Files.isRegularFile(f) )
+						Files.setLastModifiedTime(f, past);
+			}
+
+			Path cacheFile = Paths.get(dir.toString(), "hashes.cache");
+			for ( int run = 0; run < 2; ++run ) {
+				FileHashCache cache = FileHashCache.load(cacheFile);
+				DirectoryDiff diff = JEasyFiles.diffDirectories(olddir, newdir, 2, cache);
+				assertEquals(Arrays.asList(Paths.get("added.txt")), diff.getAdded());
+				assertEquals(Arrays.asList(Paths.get("nested", "file2.txt")), diff.getRemoved());
+				assertEquals(Arrays.asList(Paths.get("file0.txt"), Paths.get("file1.txt")), diff.getModified());
+				assertEquals(6, diff.getUnchanged().size());
+				cache.save(cacheFile);
+				assertEquals(12, FileHashCache.load(cacheFile).size());
+			}
+
+			FileHashCache cache = new FileHashCache();
+			Path fresh = Paths.get(newdir.toString(), "fresh.txt");
+			Files.write(fresh, "d".getBytes(StandardCharsets.UTF_8));
+			cache.hash(fresh);
+			assertEquals(0, cache.size());
+			Files.write(fresh, "e".getBytes(StandardCharsets.UTF_8));
+			assertArrayEquals(FileHashing.hash(fresh), cache.hash(fresh));
+		} catch ( IOException ex ) {
+			fail(ex.getMessage());
+		} finally {
+			cleanupFiles(dir);
+		}
+	}
+
+	/**
+	 * Test of DirectoryManifest snapshots, written to disk and loaded back.
+	 */
+	@Test
+	public void testDirectoryManifest() {
+		System.out.println("DirectoryManifest");
+		Path dir = null;
+		try {
+			dir = Files.createTempDirectory(TEST_DIRECTORY_PREFIX);
+			Path tree = createTestDirectories(dir).get("nested dirs and files");
+			Files.write(Paths.get(tree.toString(), "file0.txt"), "zero".getBytes(StandardCharsets.UTF_8));
+			Path manifestFile = Paths.get(dir.toString(), "tree.manifest");
+
+			for ( boolean hashes : new boolean[]{ false, true } ) {
+				System.out.println("\thashes " + hashes);
+				DirectoryManifest written = hashes
+						? DirectoryManifest.snapshot(tree, 2, null)
+						: DirectoryManifest.snapshot(tree);
+				written.write(manifestFile);
+				DirectoryManifest loaded = DirectoryManifest.load(manifestFile);
+
+				assertEquals(9, loaded.getEntries().size());
+				assertEquals(hashes, loaded.hasHashes());
+				assertEquals(true, loaded.isStructureEqual(written));
+				assertEquals(true, loaded.diff(written).isIdentical());
+				assertEquals(4, loaded.getEntry("file0.txt").getSize());
+				assertEquals(true, loaded.getEntry("nested").isDirectory());
+				assertEquals(true, JEasyFiles.isDirectoryStructureEqual(tree, loaded));
+				assertEquals(true, JEasyFiles.diffDirectories(loaded, tree).isIdentical());
+			}
+
+			DirectoryManifest before = DirectoryManifest.load(manifestFile);
+			Files.createFile(Paths.get(tree.toString(), "nested", "new.txt"));
+			Files.write(Paths.get(tree.toString(), "file0.txt"), "ZERO".getBytes(StandardCharsets.UTF_8));
+			Files.setLastModifiedTime(Paths.get(tree.toString(), "file0.txt"), FileTime.fromMillis(0));
+			assertEquals(false, JEasyFiles.isDirectoryStructureEqual(tree, before));
+			DirectoryDiff diff = JEasyFiles.diffDirectories(before, tree);
+			assertEquals(Arrays.asList(Paths.get("nested", "new.txt")), diff.getAdded());
+			assertEquals(Arrays.asList(Paths.get("file0.txt")), diff.getModified());
+		} catch ( IOException ex ) {
+			fail(ex.getMessage());
+		} finally {
+			cleanupFiles(dir);
+		}
+	}
+
+	/**
+	 * Test of mirrorDirectory method, of class JEasyFiles.
+	 */
+	@Test
+	public void testMirrorDirectory() {
+		System.out.println("mirrorDirectory");
+		Path dir = null;
+		try {
+			dir = Files.createTempDirectory(TEST_DIRECTORY_PREFIX);
+			Path olddir = createTestDirectories(dir).get("nested dirs and files");
+			Path newdir = Paths.get(dir.toString(), "_MIRROR");
+			DirectoryMirror mirror = JEasyFiles.mirrorDirectory(olddir, newdir, new SyncOptions(), 20, TimeUnit.MILLISECONDS);
+			try {
+				assertEquals(true, JEasyFiles.isDirectoryStructureEqual(olddir, newdir));
+
+				Path created = Files.createDirectories(Paths.get(olddir.toString(), "nested", "new", "deeper"));
+				Files.write(Paths.get(created.toString(), "file.txt"), "new".getBytes(StandardCharsets.UTF_8));
+				Files.delete(Paths.get(olddir.toString(), "file3.txt"));
+				Files.write(Paths.get(olddir.toString(), "file2.txt"), "changed".getBytes(StandardCharsets.UTF_8));
+
+				long deadline = System.currentTimeMillis() + 10000;
+				while ( System.currentTimeMillis() < deadline ) {
+					try {
+						if ( JEasyFiles.diffDirectories(olddir, newdir).isIdentical() )
+							break;
+					} catch ( IOException ex ) {
+						// The mirror removed a file while it was being compared.
+					}
+					Thread.sleep(20);
+				}
+				assertEquals(true, JEasyFiles.diffDirectories(olddir, newdir).isIdentical());
+			} finally {
+				mirror.close();
+			}
+		} catch ( IOException | InterruptedException ex ) {
+			fail(ex.getMessage());
+		} finally {
+			cleanupFiles(dir);
+		}
+	}
+
+	/**
+	 * Test of mirrorDirectory method, of class JEasyFiles, closing the mirror
+	 * while it applies a change.
+	 */
+	@Test
+	public void testMirrorDirectory_Close() {
+		System.out.println("mirrorDirectory close");
+		Path dir = null;
+		try {
+			dir = Files.createTempDirectory(TEST_DIRECTORY_PREFIX);
+			Path olddir = createTestDirectories(dir).get("nested dirs and files");
+			Path newdir = Paths.get(dir.toString(), "_MIRROR");
+			Path staged = Files.createDirectory(Paths.get(dir.toString(), "_STAGED"));
+			byte[] data = new byte[ 4096 ];
+			for ( int i = 0; i < 3000; ++i )
+				Files.write(Paths.get(staged.toString(), "file" + i), data);
+
+			Path target = Paths.get(newdir.toString(), "_STAGED");
+			Set<Path> before;
+			DirectoryMirror mirror = JEasyFiles.mirrorDirectory(olddir, newdir, new SyncOptions(), 20, TimeUnit.MILLISECONDS);
+			try {
+				Files.move(staged, Paths.get(olddir.toString(), "_STAGED"));
+				long deadline = System.currentTimeMillis() + 10000;
+				while ( !Files.exists(target) && System.currentTimeMillis() < deadline )
+					Thread.sleep(1);
+			} finally {
+				mirror.close();
+			}
+			try ( Stream<Path> files = Files.list(target) ) {
+				before = files.collect(Collectors.toSet());
+			}
+			Thread.sleep(200);
+			try ( Stream<Path> files = Files.list(target) ) {
+				assertEquals(before, files.collect(Collectors.toSet()));
+			}
+		} catch ( IOException | InterruptedException ex ) {
+			fail(ex.getMessage());
+		} finally {
+			cleanupFiles(dir);
+		}
+	}
+
+	/**
+	 * Test of FileOperationMetrics recorded by copyDirectory and
+	 * deleteDirectory.
+	 */
+	@Test
+	public void testFileOperationMetrics() {
+		System.out.println("FileOperationMetrics");
+		Path dir = null;
+		try {
+			dir = Files.createTempDirectory(TEST_DIRECTORY_PREFIX);
+			Path olddir = createTestDirectories(dir).get("nested dirs and files");
+			Files.write(Paths.get(olddir.toString(), "file0.txt"), new byte[ 1000 ]);
+			Path newdir = Paths.get(dir.toString(), "_COPIED");
+
+			AtomicInteger reports = new AtomicInteger();
+			FileOperationMetrics copyMetrics = new FileOperationMetrics(
+					(FileOperationMetrics m) -> reports.incrementAndGet(), 0, TimeUnit.MILLISECONDS);
+			// The clock starts with the operation, not when the metrics are created.
+			assertEquals(0, copyMetrics.getElapsed(TimeUnit.NANOSECONDS));
+			JEasyFiles.copyDirectory(olddir, newdir, new CopyOptions().setParallelism(2).setMetrics(copyMetrics));
+			assertEquals(8, copyMetrics.getFiles());
+			assertEquals(1000, copyMetrics.getBytes());
+			assertEquals(0, copyMetrics.getFailures());
+			assertEquals(8, Arrays.stream(copyMetrics.getLatencyHistogram()).sum());
+			assertEquals(8, copyMetrics.getSlowestFiles().size());
+			assertEquals(true, reports.get() > 0);
+
+			FileOperationMetrics deleteMetrics = new FileOperationMetrics();
+			JEasyFiles.deleteDirectory(newdir, 2, deleteMetrics);
+			assertEquals(10, deleteMetrics.getFiles());
+		} catch ( IOException ex ) {
+			fail(ex.getMessage());
+		} finally {
+			cleanupFiles(dir);
+		}
+	}
+
+	/**
+	 * Test of copyDirectoryAsync method, of class JEasyFiles. A single threaded
+	 * executor must be enough to finish a parallel copy.
+	 */
+	@Test
+	public void testCopyDirectoryAsync() {
+		System.out.println("copyDirectoryAsync");
+		Path dir = null;
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			dir = Files.createTempDirectory(TEST_DIRECTORY_PREFIX);
+			Path olddir = createTestDirectories(dir).get("nested dirs and files");
+			Path newdir = Paths.get(dir.toString(), "_COPIED");
+			FileOperationFuture future = JEasyFiles.copyDirectoryAsync(olddir, newdir,
+					new CopyOptions().setParallelism(4), executor);
+			future.get(10, TimeUnit.SECONDS);
+			assertEquals(8, future.getMetrics().getFiles());
+			assertEquals(true, JEasyFiles.isDirectoryStructureEqual(olddir, newdir));
+		} catch ( IOException | InterruptedException | ExecutionException | TimeoutException ex ) {
+			fail(ex.getMessage());
+		} finally {
+			executor.shutdown();
+			cleanupFiles(dir);
+		}
+	}
+
+	/**
+	 * Large files copied in ranges inside of a parallel copy share its
+	 * parallelism instead of each starting helpers of their own.
+	 */
+	@Test
+	public void testCopyDirectoryAsync_LargeFiles() {
+		System.out.println("copyDirectoryAsync large files");
+		Path dir = null;
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			dir = Files.createTempDirectory(TEST_DIRECTORY_PREFIX);
+			Path olddir = Files.createDirectory(Paths.get(dir.toString(), "large"));
+			byte[] big = new byte[ 2 * 1024 * 1024 ];
+			new Random(3).nextBytes(big);
+			for ( int i = 0; i < 8; ++i )
+				Files.write(Paths.get(olddir.toString(), "big" + i), big);
+			Path newdir = Paths.get(dir.toString(), "_COPIED");
+
+			AtomicInteger running = new AtomicInteger();
+			AtomicInteger peak = new AtomicInteger();
+			Executor counting = ( Runnable task ) -> executor.execute(() -> {
+				peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+				try {
+					task.run();
+				} finally {
+					running.decrementAndGet();
+				}
+			});
+			FileOperationFuture future = JEasyFiles.copyDirectoryAsync(olddir, newdir, new CopyOptions()
+					.setParallelism(4).setLargeFileThreshold(1024 * 1024).setChunkSize(64 * 1024), counting);
+			future.get(10, TimeUnit.SECONDS);
+			assertEquals(true, JEasyFiles.diffDirectories(olddir, newdir).isIdentical());
+			// A helper may start just before the one it replaces has returned.
+			assertTrue("Peak of " + peak.get() + " threads", peak.get() <= 4 + 1);
+		} catch ( IOException | InterruptedException | ExecutionException | TimeoutException ex ) {
+			fail(ex.getMessage());
+		} finally {
+			executor.shutdown();
+			cleanupFiles(dir);
+		}
+	}
+
+	/**
+	 * Cancelling an asynchronous copy stops it from copying any more files.
+	 */
+	@Test
+	public void testCopyDirectoryAsync_Cancel() {
+		System.out.println("copyDirectoryAsync CANCEL");
+		Path dir = null;
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			dir = Files.createTempDirectory(TEST_DIRECTORY_PREFIX);
+			Path olddir = createTestDirectories(dir).get("nested dirs and files");
+			Path newdir = Paths.get(dir.toString(), "_COPIED");
+
+			CountDownLatch started = new CountDownLatch(1);
+			CountDownLatch release = new CountDownLatch(1);
+			CopyStrategy blocking = ( Path source, Path target ) -> {
+				started.countDown();
+				try {
+					release.await();
+				} catch ( InterruptedException ex ) {
+					Thread.currentThread().interrupt();
+				}
+				return false;
+			};
+			FileOperationFuture future = JEasyFiles.copyDirectoryAsync(olddir, newdir,
+					new CopyOptions().setParallelism(1).setStrategy(blocking), executor);
+			assertEquals(true, started.await(10, TimeUnit.SECONDS));
+			assertEquals(true, future.cancel(false));
+			assertEquals(true, future.isCancelled());
+			release.countDown();
+
+			executor.shutdown();
+			assertEquals(true, executor.awaitTermination(10, TimeUnit.SECONDS));
+			assertEquals(1, future.getMetrics().getFiles());
+		} catch ( IOException | InterruptedException ex ) {
+			fail(ex.getMessage());
+		} finally {
+			executor.shutdownNow();
+			cleanupFiles(dir);
+		}
+	}
+
+	/**
+	 * An error thrown by an asynchronous copy completes its future.
+	 */
+	@Test
+	public void testCopyDirectoryAsync_Error() {
+		System.out.println("copyDirectoryAsync ERROR");
+		Path dir = null;
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			dir = Files.createTempDirectory(TEST_DIRECTORY_PREFIX);
+			Path olddir = createTestDirectories(dir).get("nested dirs and files");
+			Path newdir = Paths.get(dir.toString(), "_COPIED");
+			CopyStrategy broken = ( Path source, Path target ) -> {
+				throw new AssertionError("broken");
+			};
+			FileOperationFuture future = JEasyFiles.copyDirectoryAsync(olddir, newdir,
+					new CopyOptions().setParallelism(1).setStrategy(broken), executor);
+			try {
+				future.get(10, TimeUnit.SECONDS);
+				fail("Completed normally.");
+			} catch ( ExecutionException ex ) {
+				assertEquals(AssertionError.class, ex.getCause().getClass());
+			}
+		} catch ( IOException | InterruptedException | TimeoutException ex ) {
+			fail(ex.getMessage());
+		} finally {
+			executor.shutdown();
+			cleanupFiles(dir);
+		}
+	}
+
+	/**
+	 * Test of DirectoryArchive export followed by import.
+	 */
+	@Test
+	public void testDirectoryArchive() {
+		System.out.println("DirectoryArchive");
+		Path dir = null;
+		try {
+			dir = Files.createTempDirectory(TEST_DIRECTORY_PREFIX);
+			Path olddir = createTestDirectories(dir).get("nested dirs and files");
+			StringBuilder longName = new StringBuilder();
+			for ( int i = 0; i < 12; ++i )
+				longName.append("long name ");
+			Files.write(Paths.get(olddir.toString(), "nested", longName.toString()), "long".getBytes(StandardCharsets.UTF_8));
+			byte[] big = new byte[ 5 * 1024 * 1024 + 3 ];
+			new Random(42).nextBytes(big);
+			Files.write(Paths.get(olddir.toString(), "big.bin"), big);
+
+			Path script = Paths.get(olddir.toString(), "nested", "script.sh");
+			Files.write(script, "#!/bin/sh\n".getBytes(StandardCharsets.UTF_8));
+			Files.setPosixFilePermissions(script, PosixFilePermissions.fromString("rwxr-x---"));
+			Files.setPosixFilePermissions(script.getParent(), PosixFilePermissions.fromString("rwx--x--x"));
+
+			Path archive = Paths.get(dir.toString(), "tree.tar.gz");
+			DirectoryArchive.exportTarGz(olddir, archive, 4);
+			Path newdir = Paths.get(dir.toString(), "_EXTRACTED");
+			DirectoryArchive.importTarGz(archive, newdir, 4);
+			assertEquals(true, JEasyFiles.diffDirectories(olddir, newdir).isIdentical());
+			assertEquals(PosixFilePermissions.fromString("rwxr-x---"),
+					Files.getPosixFilePermissions(Paths.get(newdir.toString(), "nested", "script.sh")));
+			assertEquals(PosixFilePermissions.fromString("rwx--x--x"),
+					Files.getPosixFilePermissions(Paths.get(newdir.toString(), "nested")));
+
+			// A failed export leaves neither the archive nor a temporary file.
+			Path failed = Paths.get(dir.toString(), "failed.tar.gz");
+			try {
+				DirectoryArchive.exportTarGz(Paths.get(dir.toString(), "missing"), failed, 4);
+				fail("Exported a missing directory");
+			} catch ( IOException ex ) {
+			}
+			try ( Stream<Path> files = Files.list(dir) ) {
+				assertEquals(false, files.anyMatch(p -> p.getFileName().toString().contains("failed")));
+			}
+		} catch ( IOException ex ) {
+			fail(ex.getMessage());
+		} finally {
+			cleanupFiles(dir);
+		}
+	}
+
+	/**
+	 * Test of DirectoryArchive import from a pipe that only ever has a few bytes
+	 * ready, so every gzip member ends with nothing more available.
+	 */
+	@Test
+	public void testDirectoryArchive_SlowStream() {
+		System.out.println("DirectoryArchive slow stream");
+		Path dir = null;
+		try {
+			dir = Files.createTempDirectory(TEST_DIRECTORY_PREFIX);
+			Path olddir = createTestDirectories(dir).get("nested dirs and files");
+			StringBuilder text = new StringBuilder();
+			for ( int i = 0; text.length() < 3 * 1024 * 1024; ++i )
+				text.append("line ").append(i % 100).append('\n');
+			Files.write(Paths.get(olddir.toString(), "text.txt"), text.toString().getBytes(StandardCharsets.UTF_8));
+
+			ByteArrayOutputStream archive = new ByteArrayOutputStream();
+			DirectoryArchive.exportTarGz(olddir, archive, 4);
+			byte[] bytes = archive.toByteArray();
+			PipedInputStream in = new PipedInputStream();
+			PipedOutputStream out = new PipedOutputStream(in);
+			Thread writer = new Thread(() -> {
+				try {
+					for ( int i = 0; i < bytes.length; ++i ) {
+						out.write(bytes[ i ]);
+						out.flush();
+						while ( in.available() > 0 )
+							Thread.yield();
+					}
+					out.close();
+				} catch ( IOException ex ) {
+					// The reader stopped early, which the test reports.
+				}
+			});
+			writer.start();
+
+			Path newdir = Paths.get(dir.toString(), "_EXTRACTED");
+			try {
+				DirectoryArchive.importTarGz(in, newdir, 4);
+			} finally {
+				in.close();
+				writer.join();
+			}
+			assertEquals(true, JEasyFiles.diffDirectories(olddir, newdir).isIdentical());
+		} catch ( IOException | InterruptedException ex ) {
+			fail(ex.getMessage());
+		} finally {
+			cleanupFiles(dir);
+		}
+	}
+
+	/**
+	 * Test of copyDirectoryDeduplicated method, of class JEasyFiles.
+	 */
+	@Test
+	public void testCopyDirectoryDeduplicated() {
+		System.out.println("copyDirectoryDeduplicated");
+		Path dir = null;
+		try {
+			dir = Files.createTempDirectory(TEST_DIRECTORY_PREFIX);
+			Path olddir = createTestDirectories(dir).get("nested dirs and files");
+			byte[] asset = new byte[ 4096 ];
+			new Random(7).nextBytes(asset);
+			Files.write(Paths.get(olddir.toString(), "asset1"), asset);
+			Files.write(Paths.get(olddir.toString(), "nested", "asset2"), asset);
+			Files.write(Paths.get(olddir.toString(), "nested", "asset3"), asset);
+			asset[ 0 ]++;
+			Files.write(Paths.get(olddir.toString(), "nested", "almost"), asset);
+
+			Path newdir = Paths.get(dir.toString(), "_COPY");
+			FileOperationMetrics metrics = new FileOperationMetrics();
+			DeduplicationReport report = JEasyFiles.copyDirectoryDeduplicated(olddir, newdir,
+					new CopyOptions().setMetrics(metrics));
+			assertEquals(true, JEasyFiles.diffDirectories(olddir, newdir).isIdentical());
+			assertEquals(2, report.getDuplicateFiles());
+			assertEquals(report.getLinkedFiles() * 4096, report.getBytesSaved());
+			// Linked files are counted, but move no bytes.
+			assertEquals(JEasyFiles.getDiskUsage(olddir).getSize() - report.getBytesSaved(), metrics.getBytes());
+		} catch ( IOException ex ) {
+			fail(ex.getMessage());
+		} finally {
+			cleanupFiles(dir);
+		}
+	}
+
+	/**
+	 * Test of copyFile method, of class JEasyFiles, splitting a file into ranges.
+	 */
+	@Test
+	public void testCopyFile_Chunked() {
+		System.out.println("copyFile chunked");
+		Path dir = null;
+		try {
+			dir = Files.createTempDirectory(TEST_DIRECTORY_PREFIX);
+			byte[] big = new byte[ 3 * 1024 * 1024 + 17 ];
+			new Random(13).nextBytes(big);
+			Path source = Paths.get(dir.toString(), "big.bin");
+			Files.write(source, big);
+
+			CopyOptions options = new CopyOptions()
+					.setParallelism(4)
+					.setLargeFileThreshold(1024 * 1024)
+					.setChunkSize(512 * 1024 + 3);
+			Path target = Paths.get(dir.toString(), "copy.bin");
+			JEasyFiles.copyFile(source, target, options);
+			assertArrayEquals(big, Files.readAllBytes(target));
+
+			try {
+				JEasyFiles.copyFile(source, target, options);
+				fail("Copied over an existing file.");
+			} catch ( IOException ex ) {
+				assertArrayEquals(big, Files.readAllBytes(target));
+			}
+		} catch ( IOException ex ) {
+			fail(ex.getMessage());
+		} finally {
+			cleanupFiles(dir);
+		}
+	}
+
+	/**
+	 * Test of getDiskUsage method, of class JEasyFiles.
+	 */
+	@Test
+	public void testGetDiskUsage() {
+		System.out.println("getDiskUsage");
+		Path dir = null;
+		try {
+			dir = Files.createTempDirectory(TEST_DIRECTORY_PREFIX);
+			Map<String, Path> dirs = createTestDirectories(dir);
+			Path nested = Paths.get(dirs.get("nested dirs and files").toString(), "nested");
+			Files.write(Paths.get(nested.toString(), "data"), new byte[ 1000 ]);
+
+			DiskUsage usage = JEasyFiles.getDiskUsage(dir);
+			assertEquals(15, usage.getFileCount());
+			assertEquals(1000, usage.getSize());
+			assertEquals(dirs.get("nested dirs and files"), usage.getSubdirectories().get(0).getPath());
+
+			// Directories modified moments ago are never cached, so age them.
+			FileTime old = FileTime.fromMillis(System.currentTimeMillis() - 60 * 60 * 1000);
+			try ( Stream<Path> tree = Files.walk(dir) ) {
+				for ( Path p : (Iterable<Path>) tree::iterator )
+					if ( Files.isDirectory(p) )
+						Files.setLastModifiedTime(p, old);
+			}
+			DiskUsageCache cache = new DiskUsageCache();
+			assertEquals(1000, JEasyFiles.getDiskUsage(dir, 2, cache).getSize());
+			assertEquals(18, cache.size());
+
+			// A cached directory is trusted for as long as its modified time is unchanged.
+			Files.write(Paths.get(nested.toString(), "more"), new byte[ 500 ]);
+			Files.setLastModifiedTime(nested, old);
+			assertEquals(1000, JEasyFiles.getDiskUsage(dir, 2, cache).getSize());
+			Files.setLastModifiedTime(nested, FileTime.fromMillis(old.toMillis() + 1000));
+			usage = JEasyFiles.getDiskUsage(dir, 2, cache);
+			assertEquals(1500, usage.getSize());
+			assertEquals(16, usage.getFileCount());
+
+			// Directories that were removed are forgotten when their parent is listed again.
+			Path removed = dirs.get("nested dirs only");
+			long removedCount;
+			try ( Stream<Path> tree = Files.walk(removed) ) {
+				removedCount = tree.filter(Files::isDirectory).count();
+			}
+			JEasyFiles.deleteDirectory(removed);
+			Files.setLastModifiedTime(dir, FileTime.fromMillis(old.toMillis() + 1000));
+			JEasyFiles.getDiskUsage(dir, 2, cache);
+			assertEquals(18 - removedCount, cache.size());
+		} catch ( IOException ex ) {
+			fail(ex.getMessage());
+		} finally {
+			cleanupFiles(dir);
+		}
+	}
+
+	/**
+	 * Test of FileTree walked by a parallel stream.
+	 */
+	@Test
+	public void testFileTree() {
+		System.out.println("FileTree");
+		Path dir = null;
+		try {
+			dir = Files.createTempDirectory(TEST_DIRECTORY_PREFIX);
+			createTestDirectories(dir);
+			Set<Path> expected;
+			try ( Stream<Path> tree = Files.walk(dir) ) {
+				expected = tree.collect(Collectors.toSet());
+			}
+			try ( Stream<FileTree.Entry> tree = FileTree.walk(dir) ) {
+				List<Path> actual = tree.parallel().map(FileTree.Entry::getPath).collect(Collectors.toList());
+				assertEquals(expected.size(), actual.size());
+				assertEquals(expected, new HashSet<>(actual));
+			}
+			try ( Stream<FileTree.Entry> tree = FileTree.walk(dir) ) {
+				assertEquals(14, tree.parallel().filter(e -> e.getAttributes().isRegularFile()).count());
+			}
+
+			Path nested = Paths.get(dir.toString(), "nested dirs only", "nested");
+			Files.createSymbolicLink(Paths.get(nested.toString(), "loop"), nested.getParent());
+			try ( Stream<FileTree.Entry> tree = FileTree.walk(dir, true) ) {
+				tree.parallel().count();
+				fail("Walked into a loop.");
+			} catch ( UncheckedIOException ex ) {
+				assertTrue(ex.getCause() instanceof FileSystemLoopException);
+			}
+		} catch ( IOException ex ) {
+			fail(ex.getMessage());
+		} finally {
+			cleanupFiles(dir);
+		}
+	}
 }
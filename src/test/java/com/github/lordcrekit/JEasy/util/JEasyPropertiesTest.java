@@ -0,0 +1,696 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 lordc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.lordcrekit.JEasy.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author lordc
+ */
+public class JEasyPropertiesTest {
+
+	static JEasyProperties roundTrip( JEasyProperties props ) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		props.save(out, "test");
+		return new JEasyProperties().load(new ByteArrayInputStream(out.toByteArray()));
+	}
+
+	/**
+	 * Test of save and load methods, of class JEasyProperties.
+	 */
+	@Test
+	public void testSaveLoad() {
+		System.out.println("save/load");
+		try {
+			JEasyProperties props = new JEasyProperties()
+					.setProperty("name", "value")
+					.setProperty("empty", "")
+					.setProperty("equals", "a=b");
+			JEasyProperties loaded = roundTrip(props);
+			assertEquals(props.getProperties(), loaded.getProperties());
+		} catch ( IOException ex ) {
+			fail(ex.getMessage());
+		}
+	}
+
+	/**
+	 * Test of the constructors of class JEasyProperties.
+	 */
+	@Test
+	public void testConstructors() {
+		System.out.println("constructors");
+		Properties props = new Properties();
+		props.setProperty("a", "1");
+		JEasyProperties copy = new JEasyProperties(new JEasyProperties(props));
+		assertEquals("1", copy.getProperty("a"));
+		copy.setProperty("b", "2");
+		assertEquals("2", copy.getProperty("b"));
+	}
+
+	/**
+	 * Test of getProperties method, of class JEasyProperties.
+	 */
+	@Test
+	public void testGetProperties() {
+		System.out.println("getProperties");
+		JEasyProperties props = new JEasyProperties();
+		Map<String, String> view = props.getProperties();
+		view.put("a", "1");
+		props.setProperty("b", "2");
+		assertEquals("1", props.getProperty("a"));
+		assertEquals(2, view.size());
+		view.entrySet().removeIf(e -> e.getKey().equals("a"));
+		assertEquals(null, props.getProperty("a"));
+		assertEquals("2", view.get("b"));
+		try {
+			props.setProperty("c", null);
+			fail("Accepted a null value.");
+		} catch ( NullPointerException ex ) {
+		}
+	}
+
+	/**
+	 * Test that save writes a single point in time while other threads are
+	 * setting properties.
+	 */
+	@Test
+	public void testSave_ConcurrentWriters() {
+		System.out.println("save concurrent writers");
+		final int keys = 1000;
+		JEasyProperties props = new JEasyProperties();
+		for ( int k = 0; k < keys; ++k )
+			props.setProperty("key" + k, "0");
+		AtomicBoolean stop = new AtomicBoolean();
+		Thread writer = new Thread(() -> {
+			// Every round sets the keys in order, so at any instant the values
+			// never increase from one key to the next, and differ by at most 1.
+			for ( int i = 1; !stop.get(); ++i )
+				for ( int k = 0; k < keys; ++k )
+					props.setProperty("key" + k, Integer.toString(i));
+		});
+		writer.start();
+		try {
+			for ( int i = 0; i < 200; ++i ) {
+				JEasyProperties saved = roundTrip(props);
+				int first = Integer.parseInt(saved.getProperty("key0"));
+				int previous = first;
+				for ( int k = 1; k < keys; ++k ) {
+					int value = Integer.parseInt(saved.getProperty("key" + k));
+					assertTrue(previous + " then " + value, value <= previous && value >= first - 1);
+					previous = value;
+				}
+			}
+		} catch ( IOException ex ) {
+			fail(ex.getMessage());
+		} finally {
+			stop.set(true);
+		}
+	}
+
+	/**
+	 * Test of load method, of class JEasyProperties, on unusual lines.
+	 */
+	@Test
+	public void testLoad_Syntax() {
+		System.out.println("load syntax");
+		String text = "#\n##\n# comment\r\nplain=1\r\nwindows=2\r\nmac=3\rno equals\n"
+				+ "trailing=4 # comment\nequals=a=b\n=empty key\nempty value=\nlast=5";
+		try {
+			JEasyProperties props = new JEasyProperties().load(new StringReader(text));
+			assertEquals(8, props.getProperties().size());
+			assertEquals("1", props.getProperty("plain"));
+			assertEquals("2", props.getProperty("windows"));
+			assertEquals("3", props.getProperty("mac"));
+			assertEquals("4 ", props.getProperty("trailing"));
+			assertEquals("a=b", props.getProperty("equals"));
+			assertEquals("empty key", props.getProperty(""));
+			assertEquals("", props.getProperty("empty value"));
+			assertEquals("5", props.getProperty("last"));
+		} catch ( IOException ex ) {
+			fail(ex.getMessage());
+		}
+	}
+
+	/**
+	 * Test of MappedProperties reading a saved file.
+	 */
+	@Test
+	public void testMappedProperties() {
+		System.out.println("MappedProperties");
+		Path file = null;
+		try {
+			file = Files.createTempFile("JEasy_Test", ".properties");
+			JEasyProperties props = new JEasyProperties();
+			for ( int i = 0; i < 5000; ++i )
+				props.setProperty("key" + i, "value " + i);
+			props.setProperty("unicode \u00e9", "\u65e5\u672c");
+			props.save(file, "mapped");
+			Files.write(file, "key7=replaced # comment\r\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+			MappedProperties mapped = MappedProperties.open(file);
+			assertEquals(5001, mapped.size());
+			assertEquals("value 42", mapped.getProperty("key42"));
+			assertEquals("replaced ", mapped.getProperty("key7"));
+			assertEquals("\u65e5\u672c", mapped.getProperty("unicode \u00e9"));
+			assertEquals(null, mapped.getProperty("key5000"));
+			assertEquals("default", mapped.getProperty("missing", "default"));
+			assertEquals(true, mapped.containsKey("key4999"));
+
+			JEasyProperties loaded = new JEasyProperties().load(file);
+			assertEquals(loaded.getProperties(), mapped.toJEasyProperties().getProperties());
+		} catch ( IOException ex ) {
+			fail(ex.getMessage());
+		} finally {
+			if ( file != null )
+				file.toFile().delete();
+		}
+	}
+
+	/**
+	 * Test of autoSave method, of class JEasyProperties.
+	 */
+	@Test
+	public void testAutoSave() {
+		System.out.println("autoSave");
+		Path dir = null;
+		try {
+			dir = Files.createTempDirectory("JEasy_Test");
+			Path file = dir.resolve("auto.properties");
+			JEasyProperties props = new JEasyProperties();
+			try ( AutoSave save = props.autoSave(file).setQuietPeriod(50, TimeUnit.MILLISECONDS).setSync(true) ) {
+				for ( int i = 0; i < 1000; ++i )
+					props.setProperty("counter", Integer.toString(i));
+				assertEquals(false, Files.exists(file));
+
+				long deadline = System.currentTimeMillis() + 10000;
+				while ( !Files.exists(file) && System.currentTimeMillis() < deadline )
+					Thread.sleep(10);
+				assertEquals("999", new JEasyProperties().load(file).getProperty("counter"));
+				assertEquals(null, save.getFailure());
+
+				props.setProperty("counter", "last");
+			}
+			assertEquals("last", new JEasyProperties().load(file).getProperty("counter"));
+			try ( Stream<Path> files = Files.list(dir) ) {
+				assertEquals(1, files.count());
+			}
+		} catch ( IOException | InterruptedException ex ) {
+			fail(ex.getMessage());
+		} finally {
+			if ( dir != null )
+				for ( File f : dir.toFile().listFiles() )
+					f.delete();
+			if ( dir != null )
+				dir.toFile().delete();
+		}
+	}
+
+	/**
+	 * Test of openJournal method, of class JEasyProperties.
+	 */
+	@Test
+	public void testJournal() {
+		System.out.println("openJournal");
+		Path dir = null;
+		try {
+			dir = Files.createTempDirectory("JEasy_Test");
+			Path base = dir.resolve("journaled.properties");
+			Path journalFile = dir.resolve("journaled.properties.journal");
+
+			JEasyProperties props = new JEasyProperties();
+			try ( Journal journal = props.openJournal(base) ) {
+				props.setProperty("a", "1").setProperty("b", "2").setProperty("a", "3").removeProperty("b");
+				props.getProperties().put("c", "\u00e9=x");
+				assertEquals(null, journal.getFailure());
+			}
+			assertEquals(false, Files.exists(base));
+			JEasyProperties reopened = new JEasyProperties();
+			reopened.openJournal(base).close();
+			assertEquals(props.getProperties(), reopened.getProperties());
+
+			// A record torn by a crash is dropped.
+			long intact = Files.size(journalFile);
+			Files.write(journalFile, new byte[] { 0, 0, 0, 20, 1, 2 }, StandardOpenOption.APPEND);
+			reopened = new JEasyProperties();
+			try ( Journal journal = reopened.openJournal(base) ) {
+				assertEquals(intact, Files.size(journalFile));
+				reopened.setProperty("d", "4");
+				assertEquals(null, journal.getFailure());
+			}
+			reopened = new JEasyProperties();
+			reopened.openJournal(base).close();
+			assertEquals("4", reopened.getProperty("d"));
+
+			props = new JEasyProperties();
+			try ( Journal journal = props.openJournal(base).setCompactionThreshold(512) ) {
+				for ( int i = 0; i < 200; ++i )
+					props.setProperty("counter", Integer.toString(i));
+				long deadline = System.currentTimeMillis() + 10000;
+				Path oldJournal = dir.resolve("journaled.properties.journal.old");
+				while ( (Files.size(journalFile) >= 512 || Files.exists(oldJournal))
+						&& System.currentTimeMillis() < deadline )
+					Thread.sleep(10);
+				assertTrue(Files.size(journalFile) < 512);
+				assertEquals(false, Files.exists(oldJournal));
+				assertEquals(null, journal.getFailure());
+			}
+			assertEquals(true, Files.exists(base));
+			reopened = new JEasyProperties();
+			reopened.openJournal(base).close();
+			assertEquals(props.getProperties(), reopened.getProperties());
+		} catch ( IOException | InterruptedException ex ) {
+			fail(ex.getMessage());
+		} finally {
+			if ( dir != null )
+				for ( File f : dir.toFile().listFiles() )
+					f.delete();
+			if ( dir != null )
+				dir.toFile().delete();
+		}
+	}
+
+	@Test
+	public void testWatch() {
+		System.out.println("watch");
+		Path dir = null;
+		try {
+			dir = Files.createTempDirectory("JEasy_Test");
+			Path file = dir.resolve("watched.properties");
+			Files.write(file, "a=1\n".getBytes(StandardCharsets.UTF_8));
+
+			JEasyProperties props = new JEasyProperties();
+			try ( HotReload reload = props.watch(file).setPollInterval(50, TimeUnit.MILLISECONDS) ) {
+				assertEquals("1", props.getProperty("a"));
+
+				// Rewritten in place.
+				Files.write(file, "a=22\nb=2\n".getBytes(StandardCharsets.UTF_8));
+				long deadline = System.currentTimeMillis() + 10000;
+				while ( props.getProperty("b") == null && System.currentTimeMillis() < deadline )
+					Thread.sleep(10);
+				assertEquals("22", props.getProperty("a"));
+				assertEquals("2", props.getProperty("b"));
+
+				// Replaced by a move, the way saves are written.
+				Path temp = dir.resolve("watched.tmp");
+				Files.write(temp, "c=3\n".getBytes(StandardCharsets.UTF_8));
+				Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+				deadline = System.currentTimeMillis() + 10000;
+				while ( props.getProperty("c") == null && System.currentTimeMillis() < deadline )
+					Thread.sleep(10);
+				assertEquals(null, props.getProperty("a"));
+				assertEquals("3", props.getProperty("c"));
+
+				// Rewritten within the same clock tick, keeping size and modified time.
+				FileTime modified = Files.getLastModifiedTime(file);
+				Files.write(file, "c=4\n".getBytes(StandardCharsets.UTF_8));
+				Files.setLastModifiedTime(file, modified);
+				deadline = System.currentTimeMillis() + 10000;
+				while ( !"4".equals(props.getProperty("c")) && System.currentTimeMillis() < deadline )
+					Thread.sleep(10);
+				assertEquals("4", props.getProperty("c"));
+
+				// A missing file keeps the properties.
+				Files.delete(file);
+				deadline = System.currentTimeMillis() + 10000;
+				while ( reload.getFailure() == null && System.currentTimeMillis() < deadline )
+					Thread.sleep(10);
+				assertTrue(reload.getFailure() != null);
+				assertEquals("4", props.getProperty("c"));
+			}
+		} catch ( IOException | InterruptedException ex ) {
+			fail(ex.getMessage());
+		} finally {
+			if ( dir != null )
+				for ( File f : dir.toFile().listFiles() )
+					f.delete();
+			if ( dir != null )
+				dir.toFile().delete();
+		}
+	}
+
+	@Test
+	public void testTypedGetters() {
+		System.out.println("getInt");
+		JEasyProperties props = new JEasyProperties()
+				.setProperty("int", "42")
+				.setProperty("long", "12345678901")
+				.setProperty("double", "0.5")
+				.setProperty("boolean", "TRUE")
+				.setProperty("duration", "PT1M30S")
+				.setProperty("unit", "SECONDS")
+				.setProperty("list", " a, b ,c ");
+
+		assertEquals(42, props.getInt("int", 0));
+		assertEquals(12345678901L, props.getLong("long", 0));
+		assertEquals(0.5, props.getDouble("double", 0), 0);
+		assertEquals(true, props.getBoolean("boolean", false));
+		assertEquals(Duration.ofSeconds(90), props.getDuration("duration", null));
+		assertEquals(TimeUnit.SECONDS, props.getEnum("unit", TimeUnit.class, null));
+		assertEquals(Arrays.asList("a", "b", "c"), props.getList("list"));
+		assertEquals(7, props.getInt("missing", 7));
+		assertEquals(Collections.emptyList(), props.getList("missing"));
+
+		// The same key read as another type is parsed again.
+		assertEquals(42L, props.getLong("int", 0));
+		assertEquals(42, props.getInt("int", 0));
+
+		// Cached values follow changes and reloads.
+		props.setProperty("int", "43");
+		assertEquals(43, props.getInt("int", 0));
+		props.getProperties().put("int", "44");
+		assertEquals(44, props.getInt("int", 0));
+		props.removeProperty("int");
+		assertEquals(-1, props.getInt("int", -1));
+		try {
+			props.load(new StringReader("int=45\nlist=\n"));
+		} catch ( IOException ex ) {
+			fail(ex.getMessage());
+		}
+		assertEquals(45, props.getInt("int", 0));
+		assertEquals(Collections.emptyList(), props.getList("list"));
+
+		try {
+			props.getInt("list", 0);
+			fail("Parsed an empty int");
+		} catch ( NumberFormatException ex ) {
+		}
+	}
+
+	@Test
+	public void testSaveBinary() {
+		System.out.println("saveBinary");
+		Path dir = null;
+		try {
+			dir = Files.createTempDirectory("JEasy_Test");
+			Path file = dir.resolve("snapshot.bin");
+
+			JEasyProperties props = new JEasyProperties();
+			for ( int i = 0; i < 500; ++i )
+				props.setProperty("key." + i, "value #" + i);
+			props.setProperty("\u00e9", "=\u00e8\n").setProperty("empty", "");
+			props.saveBinary(file);
+
+			assertEquals(props.getProperties(), new JEasyProperties().load(file).getProperties());
+			try ( InputStream in = Files.newInputStream(file) ) {
+				assertEquals(props.getProperties(), new JEasyProperties().load(in).getProperties());
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			props.saveBinary(out);
+			assertEquals(props.getProperties(),
+					new JEasyProperties().load(new ByteArrayInputStream(out.toByteArray())).getProperties());
+
+			MappedProperties mapped = MappedProperties.open(file);
+			assertEquals(props.getProperties().size(), mapped.size());
+			assertEquals("value #123", mapped.getProperty("key.123"));
+			assertEquals("=\u00e8\n", mapped.getProperty("\u00e9"));
+			assertEquals("", mapped.getProperty("empty"));
+			assertEquals(null, mapped.getProperty("key.500"));
+			assertEquals(false, mapped.containsKey("missing"));
+			assertEquals(props.getProperties(), mapped.toJEasyProperties().getProperties());
+
+			new JEasyProperties().saveBinary(file);
+			assertEquals(0, MappedProperties.open(file).size());
+			assertEquals(0, new JEasyProperties().load(file).getProperties().size());
+
+			// A damaged file is refused, leaving the properties as they were.
+			props.saveBinary(file);
+			byte[] bytes = Files.readAllBytes(file);
+			bytes[bytes.length / 2] ^= 1;
+			Files.write(file, bytes);
+			try {
+				props.load(file);
+				fail("Loaded a corrupt file");
+			} catch ( IOException ex ) {
+			}
+			try {
+				MappedProperties.open(file);
+				fail("Mapped a corrupt file");
+			} catch ( IOException ex ) {
+			}
+			assertEquals(502, props.getProperties().size());
+		} catch ( IOException ex ) {
+			fail(ex.getMessage());
+		} finally {
+			if ( dir != null )
+				for ( File f : dir.toFile().listFiles() )
+					f.delete();
+			if ( dir != null )
+				dir.toFile().delete();
+		}
+	}
+
+	@Test
+	public void testLayeredProperties() {
+		System.out.println("LayeredProperties");
+		JEasyProperties overrides = new JEasyProperties().setProperty("a", "override");
+		JEasyProperties site = new JEasyProperties().setProperty("a", "site").setProperty("b", "site");
+		JEasyProperties defaults = new JEasyProperties().setProperty("b", "default").setProperty("c", "default");
+
+		try ( LayeredProperties layered = new LayeredProperties(overrides, site, defaults) ) {
+			assertEquals(Arrays.asList(overrides, site, defaults), layered.getLayers());
+			assertEquals("override", layered.getProperty("a"));
+			assertEquals("site", layered.getProperty("b"));
+			assertEquals("default", layered.getProperty("c"));
+			assertEquals(null, layered.getProperty("d"));
+			assertEquals("none", layered.getProperty("d", "none"));
+
+			// Cached keys follow changes to any layer.
+			defaults.setProperty("d", "default");
+			assertEquals("default", layered.getProperty("d"));
+			site.removeProperty("b");
+			assertEquals("default", layered.getProperty("b"));
+			overrides.getProperties().put("c", "override");
+			assertEquals("override", layered.getProperty("c"));
+			try {
+				overrides.load(new StringReader("b=reloaded\n"));
+			} catch ( IOException ex ) {
+				fail(ex.getMessage());
+			}
+			assertEquals("reloaded", layered.getProperty("b"));
+			assertEquals("site", layered.getProperty("a"));
+			assertEquals("default", layered.getProperty("c"));
+			assertEquals(true, layered.containsKey("d"));
+		}
+
+		try {
+			new LayeredProperties(overrides, null);
+			fail("Accepted a null layer");
+		} catch ( NullPointerException ex ) {
+		}
+	}
+
+	@Test
+	public void testSortedViews() {
+		System.out.println("getPropertiesWithPrefix");
+		JEasyProperties props = new JEasyProperties()
+				.setProperty("db.pool.size", "10")
+				.setProperty("db.pool.timeout", "PT5S")
+				.setProperty("db.url", "jdbc:x")
+				.setProperty("db.pool", "not in the namespace")
+				.setProperty("web.port", "80");
+
+		SortedMap<String, String> prefixed = props.getPropertiesWithPrefix("db.pool.");
+		assertEquals(Arrays.asList("db.pool.size", "db.pool.timeout"), new ArrayList<>(prefixed.keySet()));
+		assertEquals("10", prefixed.get("db.pool.size"));
+		assertEquals(null, prefixed.get("db.url"));
+
+		SortedMap<String, String> pool = props.getNamespace("db.pool.");
+		assertEquals(Arrays.asList("size", "timeout"), new ArrayList<>(pool.keySet()));
+		assertEquals("PT5S", pool.get("timeout"));
+		assertEquals("size", pool.firstKey());
+		assertEquals(Arrays.asList("size"), new ArrayList<>(pool.headMap("t").keySet()));
+
+		SortedMap<String, String> range = props.getPropertiesInRange("db.pool.", "web");
+		assertEquals(Arrays.asList("db.pool.size", "db.pool.timeout", "db.url"), new ArrayList<>(range.keySet()));
+
+		// The views are live, both ways, and survive loads.
+		props.setProperty("db.pool.max", "20").removeProperty("db.pool.size");
+		assertEquals(Arrays.asList("max", "timeout"), new ArrayList<>(pool.keySet()));
+		pool.put("min", "1");
+		assertEquals("1", props.getProperty("db.pool.min"));
+		pool.remove("max");
+		assertEquals(null, props.getProperty("db.pool.max"));
+		try {
+			pool.subMap("a", "z").put("zz", "x");
+			fail("Put a key out of range");
+		} catch ( IllegalArgumentException ex ) {
+		}
+		try {
+			props.load(new StringReader("db.pool.idle=3\ndb.url=y\n"));
+		} catch ( IOException ex ) {
+			fail(ex.getMessage());
+		}
+		assertEquals(Arrays.asList("idle"), new ArrayList<>(pool.keySet()));
+		assertEquals(2, range.size());
+
+		// Keys ending in the highest char still fall under their prefix.
+		props.setProperty("x\uffff", "1").setProperty("x\uffffy", "2").setProperty("y", "3");
+		assertEquals(2, props.getPropertiesWithPrefix("x\uffff").size());
+		assertEquals(props.getProperties(), props.getPropertiesWithPrefix(""));
+	}
+
+	@Test
+	public void testJournal_Replace() {
+		System.out.println("openJournal replace");
+		Path dir = null;
+		try {
+			dir = Files.createTempDirectory("JEasy_Test");
+			Path base = dir.resolve("journaled.properties");
+
+			JEasyProperties props = new JEasyProperties();
+			Journal journal = props.openJournal(base);
+			try {
+				props.setProperty("a", "1").setProperty("b", "2");
+				props.load(new StringReader("b=3\nc=4\n"));
+				props.setProperty("d", "5");
+			} finally {
+				journal.close();
+			}
+			// The replace is in the journal itself, not only in the base file.
+			assertEquals(false, Files.exists(base));
+			JEasyProperties reopened = new JEasyProperties();
+			reopened.openJournal(base).close();
+			assertEquals(props.getProperties(), reopened.getProperties());
+			assertEquals(null, reopened.getProperty("a"));
+		} catch ( IOException ex ) {
+			fail(ex.getMessage());
+		} finally {
+			if ( dir != null )
+				for ( File f : dir.toFile().listFiles() )
+					f.delete();
+			if ( dir != null )
+				dir.toFile().delete();
+		}
+	}
+
+	@Test
+	public void testJournal_FailedCompaction() {
+		System.out.println("openJournal failed compaction");
+		Path dir = null;
+		Path blocker = null;
+		try {
+			dir = Files.createTempDirectory("JEasy_Test");
+			Path base = dir.resolve("journaled.properties");
+			Path journalFile = dir.resolve("journaled.properties.journal");
+			Path oldJournal = dir.resolve("journaled.properties.journal.old");
+
+			JEasyProperties props = new JEasyProperties();
+			Journal journal = props.openJournal(base).setCompactionThreshold(512);
+			try {
+				// A directory in the way makes setting the journal aside fail.
+				blocker = Files.createFile(Files.createDirectory(oldJournal).resolve("blocker"));
+				for ( int i = 0; i < 100; ++i )
+					props.setProperty("counter", Integer.toString(i));
+				assertTrue(journal.getFailure() != null);
+				assertTrue(Files.size(journalFile) >= 512);
+
+				Files.delete(blocker);
+				Files.delete(oldJournal);
+				for ( int i = 100; i < 200; ++i )
+					props.setProperty("counter", Integer.toString(i));
+				long deadline = System.currentTimeMillis() + 10000;
+				while ( (Files.size(journalFile) >= 512 || Files.exists(oldJournal))
+						&& System.currentTimeMillis() < deadline )
+					Thread.sleep(10);
+				assertTrue(Files.size(journalFile) < 512);
+			} finally {
+				journal.close();
+			}
+			JEasyProperties reopened = new JEasyProperties();
+			reopened.openJournal(base).close();
+			assertEquals("199", reopened.getProperty("counter"));
+		} catch ( IOException | InterruptedException ex ) {
+			fail(ex.getMessage());
+		} finally {
+			if ( blocker != null )
+				blocker.toFile().delete();
+			if ( dir != null )
+				for ( File f : dir.toFile().listFiles() )
+					f.delete();
+			if ( dir != null )
+				dir.toFile().delete();
+		}
+	}
+
+	@Test
+	public void testSave_Symlink() {
+		System.out.println("save symlink");
+		Path dir = null;
+		try {
+			dir = Files.createTempDirectory("JEasy_Test");
+			Path file = dir.resolve("real.properties");
+			Path link = Files.createSymbolicLink(dir.resolve("link.properties"), file.getFileName());
+			Files.write(file, new byte[0]);
+			Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-r-----");
+			Files.setPosixFilePermissions(file, permissions);
+
+			JEasyProperties props = new JEasyProperties().setProperty("a", "1");
+			props.save(link, null);
+			assertTrue(Files.isSymbolicLink(link));
+			assertEquals("1", new JEasyProperties().load(file).getProperty("a"));
+
+			// Saves through a temporary file still replace the file, not the link.
+			props.setProperty("a", "2");
+			props.save(link, null, true);
+			assertTrue(Files.isSymbolicLink(link));
+			assertEquals("2", new JEasyProperties().load(file).getProperty("a"));
+			assertEquals(permissions, Files.getPosixFilePermissions(file));
+		} catch ( IOException ex ) {
+			fail(ex.getMessage());
+		} finally {
+			if ( dir != null )
+				for ( File f : dir.toFile().listFiles() )
+					f.delete();
+			if ( dir != null )
+				dir.toFile().delete();
+		}
+	}
+}